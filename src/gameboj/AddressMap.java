@@ -16,7 +16,7 @@ public interface AddressMap {
 	int[] BG_DISPLAY_DATA = new int[] { 0x9800, 0x9C00 };
 
 	// Memory-mapped "IO" registers
-	int REGS_START = 0xFF00;
+	int REGS_START = 0xFF00, REGS_END = 0xFF80, REGS_SIZE = REGS_END - REGS_START;
 	int REG_P1 = 0xFF00;
 	int REG_DIV = 0xFF04;
 	int REG_TIMA = 0xFF05;
@@ -3,10 +3,20 @@ package gameboj;
 import gameboj.component.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
- * Represents a physical 16-bits data bus
+ * Represents a physical 16-bits data bus. The I/O registers, between 0xFF00
+ * and 0xFF7F, are dispatched through a table giving the component handling
+ * each register. The other addresses, and the registers without handler, are
+ * served by the first attached component that has data at the address.
+ * <p>
+ * Write watchers can observe the writes made through the bus on address
+ * ranges. A bitset of the watched addresses is tested on every write, so that
+ * writes to unwatched addresses cost a single test. Loading a state rewrites
+ * the components directly: the watchers are then told the new content of
+ * their ranges by <code>notifyAllWatched</code>.
  *
  * @author Francois BURGUET
  */
@@ -14,6 +24,29 @@ import java.util.Objects;
 public final class Bus {
 
 	private final ArrayList<Component> comp = new ArrayList<>();
+	private final Component[] registers = new Component[AddressMap.REGS_SIZE];
+	private final int[] unusedBits = new int[AddressMap.REGS_SIZE];
+
+	private final ArrayList<Watch> watches = new ArrayList<>();
+	private final long[] watched = new long[0x10000 / Long.SIZE];
+
+	/**
+	 * Observer of the writes made through the bus on an address range
+	 */
+	@FunctionalInterface
+	public interface WriteWatcher {
+
+		/**
+		 * Called after the data was written at the address
+		 *
+		 * @param address : address of the write, 16 bits value
+		 * @param data : data written, 8 bits value
+		 */
+		void written(int address, int data);
+	}
+
+	private record Watch(int start, int end, WriteWatcher watcher) {
+	}
 
 	/**
 	 * Attaches the component to this bus
@@ -25,6 +58,81 @@ public final class Bus {
 		comp.add(Objects.requireNonNull(component));
 	}
 
+	/**
+	 * Attaches the component as the handler of the I/O registers between
+	 * <code>start</code> (inclusive) and <code>end</code> (exclusive)
+	 *
+	 * @param component : component handling the registers, non-null
+	 * @param start : address of the first register
+	 * @param end : address following the last register
+	 * @throws NullPointerException if the given component is null
+	 * @throws IllegalArgumentException if one of the addresses is not an I/O
+	 *             register or the register already has a handler
+	 */
+	public void attachRegisters(Component component, int start, int end) {
+		for (int address = start; address < end; ++address)
+			attachRegister(component, address, 0);
+	}
+
+	/**
+	 * Attaches the component as the handler of the I/O register. The unused bits
+	 * of the register are read as 1, whatever the component returns.
+	 *
+	 * @param component : component handling the register, non-null
+	 * @param address : address of the register
+	 * @param unusedBits : the bits of the register read as 1, 8 bits value
+	 * @throws NullPointerException if the given component is null
+	 * @throws IllegalArgumentException if the address is not an I/O register,
+	 *             the register already has a handler or unusedBits is invalid
+	 */
+	public void attachRegister(Component component, int address, int unusedBits) {
+		Objects.requireNonNull(component);
+		Preconditions.checkArgument(AddressMap.REGS_START <= address && address < AddressMap.REGS_END);
+		Preconditions.checkBits8(unusedBits);
+		int index = address - AddressMap.REGS_START;
+		Preconditions.checkArgument(registers[index] == null);
+		registers[index] = component;
+		this.unusedBits[index] = unusedBits;
+	}
+
+	/**
+	 * Registers the watcher of the writes between <code>start</code>
+	 * (inclusive) and <code>end</code> (exclusive). A watcher can be registered
+	 * on several ranges. It only sees the writes made through the bus, and the
+	 * calls to <code>notifyAllWatched</code>, made by <code>GameBoy</code>
+	 * after each state load, including the restores of a rewind buffer. The
+	 * writes of a component to its own memory are not seen, and watchers are
+	 * not carried over to the forks of a GB.
+	 *
+	 * @param start : first address watched, 16-bits
+	 * @param end : address following the last one watched, between start and 0x10000
+	 * @param watcher : the watcher, non-null
+	 * @throws NullPointerException if the watcher is null
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public void watch(int start, int end, WriteWatcher watcher) {
+		Objects.requireNonNull(watcher);
+		Preconditions.checkBits16(start);
+		Preconditions.checkArgument(start <= end && end <= 0x10000);
+		watches.add(new Watch(start, end, watcher));
+		for (int address = start; address < end; ++address)
+			watched[address / Long.SIZE] |= 1L << address;
+	}
+
+	/**
+	 * Removes the watcher from all the ranges it was registered on
+	 *
+	 * @param watcher : the watcher to remove
+	 */
+	public void unwatch(WriteWatcher watcher) {
+		watches.removeIf(w -> w.watcher() == watcher);
+		Arrays.fill(watched, 0);
+		for (Watch w : watches) {
+			for (int address = w.start(); address < w.end(); ++address)
+				watched[address / Long.SIZE] |= 1L << address;
+		}
+	}
+
 	/**
 	 * Retrieves the first data that is not <code>0xFF</code> from the list
 	 * of components attached to this bus. If no component can be read on the
@@ -36,9 +144,36 @@ public final class Bus {
 	 */
 	public int read(int address) {
 		Preconditions.checkBits16(address);
+		return readUnchecked(address);
+	}
+
+	/**
+	 * Same as <code>read</code>, for a caller that already guarantees the
+	 * address is a 16 bits value. The components are not validating it
+	 * again, unless in debug mode.
+	 *
+	 * @param address : address to read at, 16-bits
+	 * @return first readable data (non NO_DATA) in <code>components</code> at <code>address</code>
+	 */
+	public int readUnchecked(int address) {
+		Component register = register(address);
+		if (register != null) {
+			int index = address - AddressMap.REGS_START;
+			int result = Preconditions.DEBUG ? register.read(address) : register.readUnchecked(address);
+			return result == Component.NO_DATA ? 0xFF : result | unusedBits[index];
+		}
+
+		if (Preconditions.DEBUG) {
+			for (Component c : comp) {
+				int result = c.read(address);
+				if (result != Component.NO_DATA)
+					return result;
+			}
+			return 0xFF;
+		}
 
 		for (Component c : comp) {
-			int result = c.read(address);
+			int result = c.readUnchecked(address);
 			if (result != Component.NO_DATA)
 				return result;
 		}
@@ -56,9 +191,61 @@ public final class Bus {
 	public void write(int address, int data) {
 		Preconditions.checkBits16(address);
 		Preconditions.checkBits8(data);
+		writeUnchecked(address, data);
+	}
 
-		for (Component c : comp) {
-			c.write(address, data);
+	/**
+	 * Same as <code>write</code>, for a caller that already guarantees the
+	 * address is a 16 bits value and the data an 8 bits value. The components
+	 * are not validating them again, unless in debug mode.
+	 *
+	 * @param address : address of the data, 16-bits
+	 * @param data : data to write, 8-bits
+	 */
+	public void writeUnchecked(int address, int data) {
+		Component register = register(address);
+		if (register != null) {
+			if (Preconditions.DEBUG)
+				register.write(address, data);
+			else
+				register.writeUnchecked(address, data);
+		} else if (Preconditions.DEBUG) {
+			for (Component c : comp) {
+				c.write(address, data);
+			}
+		} else {
+			for (Component c : comp) {
+				c.writeUnchecked(address, data);
+			}
+		}
+
+		if ((watched[address / Long.SIZE] & (1L << address)) != 0)
+			notifyWatchers(address, data);
+	}
+
+	/**
+	 * Calls every watcher with the current content of each address it watches,
+	 * read through the bus, after the components were modified without
+	 * going through it, for instance by a state load. The content may not
+	 * have changed.
+	 */
+	public void notifyAllWatched() {
+		for (Watch w : watches) {
+			for (int address = w.start(); address < w.end(); ++address)
+				w.watcher().written(address, readUnchecked(address));
 		}
 	}
+
+	private void notifyWatchers(int address, int data) {
+		for (Watch w : watches) {
+			if (w.start() <= address && address < w.end())
+				w.watcher().written(address, data);
+		}
+	}
+
+	private Component register(int address) {
+		return (address & -AddressMap.REGS_SIZE) == AddressMap.REGS_START
+				? registers[address - AddressMap.REGS_START]
+				: null;
+	}
 }
@@ -0,0 +1,214 @@
+package gameboj;
+
+import gameboj.component.lcd.LcdImage;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a GameBoy frame after frame on its own thread, so that neither the
+ * user interface nor the emulation stall each other. The last completed image
+ * is handed to the interface through an atomic reference, and the inputs go
+ * through the input queue of the GameBoy.
+ * <p>
+ * A paced loop parks between two frames until the wall clock catches up, or
+ * until the audio line has room for a frame; an unpaced loop runs as fast as
+ * possible. The delay between two frames is measured, giving the jitter of
+ * the frame time.
+ * <p>
+ * An exception thrown by the GameBoy or the hook stops the loop; it is
+ * printed and kept, so that the interface can report it.
+ *
+ * @author Francois BURGUET
+ */
+public final class EmulationLoop implements Runnable {
+
+	/**
+	 * Number of clock ticks of a frame: 154 lines of 114 cycles
+	 */
+	public static final long FRAME_TICKS = 4L * 114 * 154;
+	private static final long FRAME_NANOS = (long) (FRAME_TICKS / GameBoy.CLOCK_NANO_FREQ);
+	private static final long MAX_LATENESS = 4 * FRAME_NANOS;
+	private static final long AUDIO_POLL_NANOS = 1_000_000;
+
+	/**
+	 * Work done on the emulation thread after each frame
+	 */
+	@FunctionalInterface
+	public interface FrameHook {
+
+		/**
+		 * Called after each frame, while the GameBoy is not running
+		 *
+		 * @param gameBoy : the GameBoy of the loop
+		 */
+		void frameDone(GameBoy gameBoy);
+	}
+
+	private final GameBoy gameBoy;
+	private final boolean paced;
+	private final LongSupplier audioTicks;
+	private final FrameHook hook;
+
+	private final AtomicReference<LcdImage> frame = new AtomicReference<>();
+	private volatile boolean running = true;
+	private volatile Throwable failure;
+
+	private volatile long frames;
+	private volatile long totalJitter;
+	private volatile long maxJitter;
+
+	/**
+	 * Creates a loop paced on the wall clock, or unpaced
+	 *
+	 * @param gameBoy : the GameBoy to run, non-null
+	 * @param paced : true to run at the speed of the GameBoy
+	 * @param hook : work to do after each frame, or null
+	 */
+	public EmulationLoop(GameBoy gameBoy, boolean paced, FrameHook hook) {
+		this(gameBoy, paced, null, hook);
+	}
+
+	/**
+	 * Creates a loop paced on an audio line, falling back to the wall clock
+	 * while the line is closed
+	 *
+	 * @param gameBoy : the GameBoy to run, non-null
+	 * @param audioTicks : gives the number of ticks to emulate to fill the
+	 *            audio line, or -1 if it is closed
+	 * @param hook : work to do after each frame, or null
+	 */
+	public EmulationLoop(GameBoy gameBoy, LongSupplier audioTicks, FrameHook hook) {
+		this(gameBoy, true, audioTicks, hook);
+	}
+
+	private EmulationLoop(GameBoy gameBoy, boolean paced, LongSupplier audioTicks, FrameHook hook) {
+		if (gameBoy == null) {
+			throw new NullPointerException();
+		}
+		this.gameBoy = gameBoy;
+		this.paced = paced;
+		this.audioTicks = audioTicks;
+		this.hook = hook;
+	}
+
+	/**
+	 * Runs the GameBoy until <code>stop</code> is called, or until the
+	 * GameBoy or the hook throws an exception. The GameBoy must not be used by
+	 * other threads meanwhile, except through its input queue.
+	 */
+	@Override
+	public void run() {
+		try {
+			runFrames();
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			running = false;
+			e.printStackTrace();
+		}
+	}
+
+	private void runFrames() {
+		long deadline = System.nanoTime();
+		long previous = deadline;
+		LcdImage published = null;
+
+		while (running) {
+			boolean audioPaced = audioTicks != null && waitForAudio();
+			gameBoy.runUntil(gameBoy.ticks() + FRAME_TICKS);
+			if (hook != null)
+				hook.frameDone(gameBoy);
+
+			LcdImage image = gameBoy.lcdController().currentImage();
+			if (image != published) {
+				published = image;
+				frame.set(image);
+			}
+
+			deadline += FRAME_NANOS;
+			long now = System.nanoTime();
+			if (paced && !audioPaced) {
+				for (long wait = deadline - now; wait > 0; wait = deadline - now) {
+					LockSupport.parkNanos(wait);
+					now = System.nanoTime();
+				}
+			}
+			if (now - deadline > MAX_LATENESS)
+				deadline = now;
+
+			long jitter = Math.abs(now - previous - FRAME_NANOS);
+			previous = now;
+			totalJitter += jitter;
+			maxJitter = Math.max(maxJitter, jitter);
+			++frames;
+		}
+	}
+
+	/**
+	 * Parks until the audio line has room for a frame
+	 *
+	 * @return true if the audio line is open
+	 */
+	private boolean waitForAudio() {
+		long ticks;
+		while ((ticks = audioTicks.getAsLong()) >= 0 && ticks < FRAME_TICKS && running)
+			LockSupport.parkNanos(AUDIO_POLL_NANOS);
+		return ticks >= 0;
+	}
+
+	/**
+	 * Stops the loop at the end of the current frame
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Returns the exception that stopped the loop, if any
+	 *
+	 * @return the failure of the loop, or null if it did not fail
+	 */
+	public Throwable failure() {
+		return failure;
+	}
+
+	/**
+	 * Returns the image completed since the last call, if any
+	 *
+	 * @return the last image of the GameBoy, or null if there is no new image
+	 */
+	public LcdImage takeFrame() {
+		return frame.getAndSet(null);
+	}
+
+	/**
+	 * Returns the number of frames run
+	 *
+	 * @return the number of frames
+	 */
+	public long frames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the mean difference between the measured and the nominal time
+	 * of a frame
+	 *
+	 * @return the mean jitter, in nanoseconds
+	 */
+	public long meanJitterNanos() {
+		long n = frames;
+		return n == 0 ? 0 : totalJitter / n;
+	}
+
+	/**
+	 * Returns the largest difference between the measured and the nominal
+	 * time of a frame
+	 *
+	 * @return the maximum jitter, in nanoseconds
+	 */
+	public long maxJitterNanos() {
+		return maxJitter;
+	}
+}
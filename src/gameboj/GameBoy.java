@@ -1,16 +1,19 @@
 package gameboj;
 
 import gameboj.component.Joypad;
+import gameboj.component.Stateful;
 import gameboj.component.Timer;
 import gameboj.component.cartridge.Cartridge;
 import gameboj.component.cpu.Cpu;
 import gameboj.component.lcd.LcdController;
 import gameboj.component.memory.BootRomController;
-import gameboj.component.memory.Ram;
-import gameboj.component.memory.RamController;
+import gameboj.component.memory.MemoryArena;
+import gameboj.component.memory.MemoryMap;
 import gameboj.component.apu.Apu;
+import gameboj.component.apu.SoundOutput;
 import gameboj.gui.AudioConverter;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -22,40 +25,98 @@ import java.util.Objects;
 public final class GameBoy {
 
 	private final Cartridge rom;
+	private final Bus bus;
 	private final Cpu cpu;
 	private final Apu apu;
 	private final Timer timer;
 	private final Joypad joypad;
 	private final LcdController lcd;
-	private int cycle;
-	private int tick;
+	private final MemoryMap memory;
+	private final BootRomController bootRom;
+	private final MemoryArena arena;
+	private final InputQueue inputs = new InputQueue();
+	private long cycle;
+	private long tick;
 
 	public static final long CLOCK_FREQ = (long) Math.pow(2, 22);
 	public static final double CLOCK_NANO_FREQ = CLOCK_FREQ / 1e9;
 
 	/**
-	 * Initialize the GameBoy and all its components
+	 * Size of the native memory block holding the memories and register files
+	 * of an off-heap GB
+	 */
+	public static final int OFF_HEAP_STATE_SIZE = 0x4400;
+
+	private static final int STATE_MAGIC = 0x47424A53; // "GBJS"
+	private static final int STATE_VERSION = 2;
+	private static final int MAX_STATE_SIZE = 0x40000;
+	private int stateSize = -1;
+	private ByteBuffer forkBuffer;
+
+	/**
+	 * Initialize the GameBoy and all its components, playing sound on the
+	 * default audio device
 	 *
 	 * @param cartridge : a virtual game cartridge, non-null
 	 * @throws NullPointerException if cartridge is null
 	 */
 	public GameBoy(Cartridge cartridge) {
+		this(cartridge, new AudioConverter());
+	}
+
+	/**
+	 * Initialize the GameBoy and all its components
+	 *
+	 * @param cartridge : a virtual game cartridge, non-null
+	 * @param soundOutput : the output of the APU, non-null
+	 * @throws NullPointerException if cartridge or soundOutput is null
+	 */
+	public GameBoy(Cartridge cartridge, SoundOutput soundOutput) {
+		this(cartridge, soundOutput, false);
+	}
+
+	/**
+	 * Initialize the GameBoy and all its components. Off-heap, the memories and
+	 * register files of the components are allocated at fixed offsets of a
+	 * single native memory block.
+	 *
+	 * @param cartridge : a virtual game cartridge, non-null
+	 * @param soundOutput : the output of the APU, non-null
+	 * @param offHeap : true to allocate the memories and register files of the
+	 *            components off-heap
+	 * @throws NullPointerException if cartridge or soundOutput is null
+	 */
+	public GameBoy(Cartridge cartridge, SoundOutput soundOutput, boolean offHeap) {
+		this(cartridge, soundOutput, offHeap ? MemoryArena.offHeap(OFF_HEAP_STATE_SIZE) : MemoryArena.heap());
+	}
+
+	/**
+	 * Initialize the GameBoy and all its components, allocating the memories
+	 * and register files of the components in the specified arena
+	 *
+	 * @param cartridge : a virtual game cartridge, non-null
+	 * @param soundOutput : the output of the APU, non-null
+	 * @param arena : the heap arena, or an off-heap arena of at least
+	 *            <code>OFF_HEAP_STATE_SIZE</code> bytes used by this GB only
+	 * @throws NullPointerException if cartridge, soundOutput or arena is null
+	 */
+	public GameBoy(Cartridge cartridge, SoundOutput soundOutput, MemoryArena arena) {
 		rom = Objects.requireNonNull(cartridge);
+		this.arena = Objects.requireNonNull(arena);
 
-		Bus bus = new Bus();
-		cpu = new Cpu();
-		apu = new Apu(new AudioConverter());
-		timer = new Timer(cpu);
+		bus = new Bus();
+		cpu = new Cpu(arena);
+		apu = new Apu(Objects.requireNonNull(soundOutput), arena);
+		timer = new Timer(cpu, apu);
 		joypad = new Joypad(cpu);
-		lcd = new LcdController(cpu);
-
-		Ram workRam = new Ram(AddressMap.WORK_RAM_SIZE);
-		bus.attach(new RamController(workRam, AddressMap.WORK_RAM_START, AddressMap.WORK_RAM_END));
-		bus.attach(new RamController(workRam, AddressMap.ECHO_RAM_START, AddressMap.ECHO_RAM_END));
+		memory = new MemoryMap(arena);
+		lcd = new LcdController(cpu, memory, arena);
+		bootRom = new BootRomController(rom);
 
-		bus.attach(new BootRomController(rom));
-		bus.attach(timer);
-		bus.attach(joypad);
+		memory.attachTo(bus);
+		bootRom.attachTo(bus);
+		timer.attachTo(bus);
+		joypad.attachTo(bus);
 
 		cpu.attachTo(bus);
 		apu.attachTo(bus);
@@ -66,6 +127,14 @@ public final class GameBoy {
 		return this.rom;
 	}
 
+	/**
+	 * Returns the arena holding the memories and register files of the GB
+	 * @return arena : the heap arena, or the off-heap arena of this GB
+	 */
+	public MemoryArena arena() {
+		return arena;
+	}
+
 	/**
 	 * Returns the joypad attached to the GB
 	 * @return joypad : the joypad of the GB
@@ -74,6 +143,15 @@ public final class GameBoy {
 		return joypad;
 	}
 
+	/**
+	 * Returns the queue through which any thread can send joypad events to
+	 * the GB, applied between two cycles by <code>runUntil</code>
+	 * @return inputs : the input queue of the GB
+	 */
+	public InputQueue inputs() {
+		return inputs;
+	}
+
 	/**
 	 * Returns the current clock tick
 	 * @return tick : the current tick
@@ -88,19 +166,165 @@ public final class GameBoy {
 		return lcd;
 	}
 
+	/**
+	 * Returns the bus of the GB, on which write watchers can be registered
+	 * @return bus : the bus of the GB
+	 */
+	public Bus bus() {
+		return bus;
+	}
+
+	/**
+	 * Returns the internal memories of the GB, which can be read directly,
+	 * without going through the bus
+	 * @return memory : the memory map of the GB
+	 */
+	public MemoryMap memoryMap() {
+		return memory;
+	}
+
+	/**
+	 * Saves the whole state of the GB at the position of the buffer: a header
+	 * identifying the format and the cartridge, the cycle and tick counters
+	 * as 64 bits values, and then the state of every component, in a fixed
+	 * order. Multi-byte values are written in the byte order of the buffer,
+	 * the state must be loaded from a buffer of the same order.
+	 *
+	 * @param buffer : the buffer to write to, with at least
+	 *            <code>stateSize()</code> bytes remaining
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void saveState(ByteBuffer buffer) {
+		buffer.putInt(STATE_MAGIC).putInt(STATE_VERSION);
+		buffer.putInt(rom.romSize()).putInt(rom.globalChecksum());
+		buffer.putLong(cycle).putLong(tick);
+		cpu.saveState(buffer);
+		timer.saveState(buffer);
+		joypad.saveState(buffer);
+		lcd.saveState(buffer);
+		apu.saveState(buffer);
+		memory.saveState(buffer);
+		bootRom.saveState(buffer);
+		rom.saveState(buffer);
+	}
+
+	/**
+	 * Restores the state of the GB saved by <code>saveState</code>, advancing
+	 * the position of the buffer. The header is checked before any component
+	 * is modified. The watchers of the bus are then notified of the content of
+	 * their ranges.
+	 *
+	 * @param buffer : the buffer to read from
+	 * @throws IllegalArgumentException if the buffer does not hold a state of
+	 *             this version, saved with the same cartridge
+	 * @throws java.nio.BufferUnderflowException if the buffer is too small
+	 */
+	public void loadState(ByteBuffer buffer) {
+		Preconditions.checkArgument(buffer.remaining() >= stateSize());
+		int position = buffer.position();
+		Preconditions.checkArgument(buffer.getInt(position) == STATE_MAGIC
+				&& buffer.getInt(position + 4) == STATE_VERSION
+				&& buffer.getInt(position + 8) == rom.romSize()
+				&& buffer.getInt(position + 12) == rom.globalChecksum());
+		buffer.position(position + 16);
+		cycle = buffer.getLong();
+		tick = buffer.getLong();
+		cpu.loadState(buffer);
+		timer.loadState(buffer);
+		joypad.loadState(buffer);
+		lcd.loadState(buffer);
+		apu.loadState(buffer);
+		memory.loadState(buffer);
+		bootRom.loadState(buffer);
+		rom.loadState(buffer);
+		bus.notifyAllWatched();
+	}
+
+	/**
+	 * Creates an independent GB in the state of this one, whose sound is
+	 * discarded
+	 *
+	 * @return the fork of this GB
+	 */
+	public GameBoy fork() {
+		return fork(SoundOutput.NULL_OUTPUT);
+	}
+
+	/**
+	 * Creates an independent GB in the state of this one; its cartridge RAM is
+	 * never saved. The fork shares the immutable ROM of the cartridge and the
+	 * opcode tables. On the heap, it also shares the pages of the memories and
+	 * of the cartridge RAM, a page being copied by the first write to it in
+	 * either GB, so the cost of a fork does not grow with the size of the
+	 * RAMs. The immutable lines of the images of the LCD are shared too, and
+	 * the registers of the components are copied through a buffer kept by
+	 * this GB. Off-heap, or with a cartridge RAM mapped over its save file,
+	 * the memories are copied.
+	 *
+	 * @param soundOutput : the output of the APU of the fork, non-null
+	 * @return the fork of this GB
+	 * @throws NullPointerException if soundOutput is null
+	 */
+	public GameBoy fork(SoundOutput soundOutput) {
+		GameBoy fork = new GameBoy(rom.forkWithState(), soundOutput, arena.isOffHeap());
+		fork.cycle = cycle;
+		fork.tick = tick;
+		if (forkBuffer == null)
+			forkBuffer = ByteBuffer.allocate(stateSize());
+		copyState(cpu, fork.cpu);
+		copyState(timer, fork.timer);
+		copyState(joypad, fork.joypad);
+		lcd.shareWith(fork.lcd);
+		copyState(apu, fork.apu);
+		copyState(bootRom, fork.bootRom);
+		memory.shareWith(fork.memory);
+		return fork;
+	}
+
+	private void copyState(Stateful from, Stateful to) {
+		from.saveState(forkBuffer.clear());
+		to.loadState(forkBuffer.flip());
+	}
+
+	/**
+	 * Returns the number of bytes written by <code>saveState</code>, which only
+	 * depends on the cartridge
+	 *
+	 * @return the size of a saved state, in bytes
+	 */
+	public int stateSize() {
+		if (stateSize < 0) {
+			ByteBuffer scratch = ByteBuffer.allocate(MAX_STATE_SIZE);
+			saveState(scratch);
+			stateSize = scratch.position();
+		}
+		return stateSize;
+	}
+
 	/**
 	 * Runs the GB until the specified clock tick.
 	 * Instructions for CPU, LCD controller and timer
-	 * always take 4 clock ticks to execute.
+	 * always take 4 clock ticks to execute. The events of the input queue are
+	 * applied to the joypad when the simulation reaches their tick.
 	 * @param tick : clock tick until which the simulation is executed
 	 * @throws IllegalArgumentException if invalid tick value
 	 */
 	public void runUntil(long tick) {
 		Preconditions.checkArgument(0 <= tick && this.tick <= tick);
+		long next = inputs.applyDue(this.tick, joypad);
+		while (next < tick) {
+			run(next);
+			next = inputs.applyDue(this.tick, joypad);
+		}
+		run(tick);
+	}
+
+	private void run(long tick) {
 		long current = ticks();
 		for (long i = current; i < tick; i++) {
 			if (i % 4 == 0) {
 				timer.cycle(this.cycle);
+				rom.cycle(this.cycle);
 				lcd.cycle(this.cycle);
 				cpu.cycle(this.cycle);
 				++this.cycle;
@@ -0,0 +1,159 @@
+package gameboj;
+
+import gameboj.component.Joypad;
+import gameboj.component.Joypad.Key;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queue of the joypad events sent to a GameBoy. Any thread can send events,
+ * without locking: they are linked in a list whose tail is swapped atomically.
+ * Only the thread running the GameBoy takes them, between two cycles, and
+ * applies each one to the joypad at the tick it is timestamped with, or as
+ * soon as possible for the events without timestamp. A listener can observe
+ * the events when they are applied, on the thread running the GameBoy.
+ *
+ * @author Francois BURGUET
+ */
+public final class InputQueue {
+
+	private static final long NOW = Long.MIN_VALUE;
+
+	/**
+	 * Observer of the events applied to the joypad
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called after the event was applied to the joypad
+		 *
+		 * @param key : the key pressed or released
+		 * @param pressed : true if the key was pressed
+		 * @param tick : the tick of the GameBoy when the event was applied
+		 */
+		void applied(Key key, boolean pressed, long tick);
+	}
+
+	private static final class Event {
+		private final Key key;
+		private final boolean pressed;
+		private final long tick;
+		private long order;
+		private volatile Event next;
+
+		private Event(Key key, boolean pressed, long tick) {
+			this.key = key;
+			this.pressed = pressed;
+			this.tick = tick;
+		}
+	}
+
+	private final AtomicReference<Event> tail;
+	private Event head;
+
+	private final PriorityQueue<Event> pending = new PriorityQueue<>(
+			Comparator.<Event>comparingLong(e -> e.tick).thenComparingLong(e -> e.order));
+	private long received;
+	private volatile Listener listener;
+
+	InputQueue() {
+		head = new Event(null, false, NOW);
+		tail = new AtomicReference<>(head);
+	}
+
+	/**
+	 * Presses the key as soon as possible
+	 *
+	 * @param key : the key pressed, non-null
+	 * @throws NullPointerException if the key is null
+	 */
+	public void keyPressed(Key key) {
+		offer(key, true, NOW);
+	}
+
+	/**
+	 * Releases the key as soon as possible
+	 *
+	 * @param key : the key released, non-null
+	 * @throws NullPointerException if the key is null
+	 */
+	public void keyReleased(Key key) {
+		offer(key, false, NOW);
+	}
+
+	/**
+	 * Presses the key at the specified tick, or as soon as possible if the
+	 * GameBoy already passed it
+	 *
+	 * @param key : the key pressed, non-null
+	 * @param tick : the tick at which the key is pressed
+	 * @throws NullPointerException if the key is null
+	 */
+	public void keyPressed(Key key, long tick) {
+		offer(key, true, tick);
+	}
+
+	/**
+	 * Releases the key at the specified tick, or as soon as possible if the
+	 * GameBoy already passed it
+	 *
+	 * @param key : the key released, non-null
+	 * @param tick : the tick at which the key is released
+	 * @throws NullPointerException if the key is null
+	 */
+	public void keyReleased(Key key, long tick) {
+		offer(key, false, tick);
+	}
+
+	/**
+	 * Sets the listener observing the events applied to the joypad
+	 *
+	 * @param listener : the listener, or null to remove it
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	private void offer(Key key, boolean pressed, long tick) {
+		Event event = new Event(Objects.requireNonNull(key), pressed, tick);
+		tail.getAndSet(event).next = event;
+	}
+
+	/**
+	 * Applies to the joypad the events due at the specified tick, in the
+	 * order of their ticks, then of their sending. Must only be called by the
+	 * thread running the GameBoy.
+	 *
+	 * @param tick : the current tick of the GameBoy
+	 * @param joypad : the joypad of the GameBoy
+	 * @return the tick of the next pending event, Long.MAX_VALUE if there is
+	 *         none
+	 */
+	long applyDue(long tick, Joypad joypad) {
+		if (head.next == null && pending.isEmpty())
+			return Long.MAX_VALUE;
+
+		for (Event event = head.next; event != null; event = event.next) {
+			event.order = received++;
+			pending.add(event);
+			head = event;
+		}
+
+		Listener listener = this.listener;
+		Event event;
+		while ((event = pending.peek()) != null && event.tick <= tick) {
+			pending.poll();
+			if (event.pressed)
+				joypad.keyPressed(event.key);
+			else
+				joypad.keyReleased(event.key);
+			if (listener != null)
+				listener.applied(event.key, event.pressed, tick);
+		}
+		return event == null ? Long.MAX_VALUE : event.tick;
+	}
+}
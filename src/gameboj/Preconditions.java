@@ -8,6 +8,18 @@ package gameboj;
  */
 public interface Preconditions {
 
+	/**
+	 * True if the <code>gameboj.debug</code> system property is set: the bus
+	 * then validates every access in each component, instead of only once when
+	 * entering the bus.
+	 * <p>
+	 * The cost of these checks is measured by comparing the speed of
+	 * <code>gameboj.headless.HeadlessMain cpu_instrs.gb --cycles=150000000
+	 * --runs=5</code> with and without the property, the fastest of the runs
+	 * being reported.
+	 */
+	boolean DEBUG = Boolean.getBoolean("gameboj.debug");
+
 	/**
 	 * Checks if the premise is true or not
 	 *
@@ -2,15 +2,19 @@ package gameboj;
 
 import gameboj.bits.Bit;
 import gameboj.bits.Bits;
+import gameboj.component.Stateful;
+import gameboj.component.memory.MemoryArena;
+import gameboj.component.memory.Ram;
 
+import java.nio.ByteBuffer;
 
 /**
  * Represents a register file
  *
  * @author Francois Burguet
  */
-public final class RegisterFile<E extends Register> {
-	private final byte[] file;
+public final class RegisterFile<E extends Register> implements Stateful {
+	private final Ram file;
 
 	/**
 	 * Creates a register file with the specified registers
@@ -18,7 +22,18 @@ public final class RegisterFile<E extends Register> {
 	 * @param allRegs : registers to group
 	 */
 	public RegisterFile(E[] allRegs) {
-		this.file = new byte[allRegs.length];
+		this(allRegs, MemoryArena.heap());
+	}
+
+	/**
+	 * Creates a register file with the specified registers, allocated in the
+	 * arena
+	 *
+	 * @param allRegs : registers to group
+	 * @param arena : the arena holding the registers
+	 */
+	public RegisterFile(E[] allRegs, MemoryArena arena) {
+		this.file = arena.allocate(allRegs.length);
 	}
 
 	/**
@@ -28,7 +43,7 @@ public final class RegisterFile<E extends Register> {
 	 * @return the value in reg, must be an 8-bit value
 	 */
 	public int get(E reg) {
-		return Bits.clip(Byte.SIZE, Byte.toUnsignedInt(file[reg.index()]));
+		return file.read(reg.index());
 	}
 
 	/**
@@ -39,7 +54,17 @@ public final class RegisterFile<E extends Register> {
 	 * @throws IllegalArgumentException if <code>newValue</code> is not 8-bit value
 	 */
 	public void set(E reg, int newValue) {
-		file[reg.index()] = (byte) Preconditions.checkBits8(newValue);
+		file.write(reg.index(), newValue);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		file.saveState(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		file.loadState(buffer);
 	}
 
 	/**
@@ -0,0 +1,226 @@
+package gameboj;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Keeps the recent states of a GameBoy, so that the game can be rewound. The
+ * states are captured periodically, usually once per frame, and grouped
+ * behind keyframes: a keyframe is stored whole, the following snapshots only
+ * store the XOR of their state with the state of the keyframe. Both are
+ * compressed by encoding the runs of zero bytes, so unchanged memory costs
+ * almost nothing.
+ * <p>
+ * The oldest groups are dropped when the snapshots use more memory than the
+ * budget. Restoring a snapshot decodes at most two snapshots.
+ *
+ * @author Francois BURGUET
+ */
+public final class RewindBuffer {
+
+	/**
+	 * Default number of snapshots between two keyframes: one second of frames
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+	private static final int MIN_ZERO_RUN = 4;
+
+	private final GameBoy gameBoy;
+	private final long budget;
+	private final int keyframeInterval;
+
+	private final ArrayDeque<Snapshot> snapshots = new ArrayDeque<>();
+	private final byte[] state;
+	private final byte[] keyState;
+	private final byte[] zeros;
+	private final byte[] encoded;
+	private long memoryUsed;
+	private int keyframes;
+
+	private record Snapshot(byte[] data, int sinceKeyframe) {
+		boolean isKeyframe() {
+			return sinceKeyframe == 0;
+		}
+	}
+
+	/**
+	 * Creates a rewind buffer, with a keyframe every
+	 * <code>DEFAULT_KEYFRAME_INTERVAL</code> snapshots
+	 *
+	 * @param gameBoy : the GameBoy whose states are captured, non-null
+	 * @param budget : maximum number of bytes used by the snapshots
+	 * @throws IllegalArgumentException if the budget is not positive
+	 */
+	public RewindBuffer(GameBoy gameBoy, long budget) {
+		this(gameBoy, budget, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates a rewind buffer
+	 *
+	 * @param gameBoy : the GameBoy whose states are captured, non-null
+	 * @param budget : maximum number of bytes used by the snapshots; the
+	 *            latest group of snapshots is kept even if it exceeds it
+	 * @param keyframeInterval : number of snapshots between two keyframes
+	 * @throws IllegalArgumentException if the budget or the interval is not
+	 *             positive
+	 */
+	public RewindBuffer(GameBoy gameBoy, long budget, int keyframeInterval) {
+		Preconditions.checkArgument(budget > 0 && keyframeInterval > 0);
+		this.gameBoy = gameBoy;
+		this.budget = budget;
+		this.keyframeInterval = keyframeInterval;
+
+		int size = gameBoy.stateSize();
+		this.state = new byte[size];
+		this.keyState = new byte[size];
+		this.zeros = new byte[size];
+		this.encoded = new byte[2 * size + 16];
+	}
+
+	/**
+	 * Captures the current state of the GameBoy. Must be called between two
+	 * runs of the GameBoy, typically after each frame.
+	 */
+	public void capture() {
+		gameBoy.saveState(ByteBuffer.wrap(state));
+
+		Snapshot latest = snapshots.peekLast();
+		int sinceKeyframe = latest == null ? 0 : (latest.sinceKeyframe() + 1) % keyframeInterval;
+		int length;
+		if (sinceKeyframe == 0) {
+			System.arraycopy(state, 0, keyState, 0, state.length);
+			length = encode(state, zeros, encoded);
+			++keyframes;
+		} else {
+			length = encode(state, keyState, encoded);
+		}
+		snapshots.addLast(new Snapshot(Arrays.copyOf(encoded, length), sinceKeyframe));
+		memoryUsed += length;
+
+		while (memoryUsed > budget && keyframes > 1) {
+			do {
+				memoryUsed -= snapshots.pollFirst().data().length;
+			} while (!snapshots.peekFirst().isKeyframe());
+			--keyframes;
+		}
+	}
+
+	/**
+	 * Restores the GameBoy in the state captured <code>age</code> snapshots
+	 * ago, and drops the snapshots captured after it
+	 *
+	 * @param age : age of the snapshot, 0 for the latest one
+	 * @throws IllegalArgumentException if the age is negative, or not smaller
+	 *             than the number of snapshots
+	 */
+	public void restore(int age) {
+		Preconditions.checkArgument(0 <= age && age < snapshots.size());
+		for (int i = 0; i < age; ++i) {
+			Snapshot dropped = snapshots.pollLast();
+			memoryUsed -= dropped.data().length;
+			if (dropped.isKeyframe())
+				--keyframes;
+		}
+
+		Snapshot target = snapshots.peekLast();
+		Snapshot keyframe = target;
+		Iterator<Snapshot> older = snapshots.descendingIterator();
+		while (!keyframe.isKeyframe())
+			keyframe = older.next();
+
+		Arrays.fill(keyState, (byte) 0);
+		decode(keyframe.data(), keyState);
+		System.arraycopy(keyState, 0, state, 0, state.length);
+		if (target != keyframe)
+			decode(target.data(), state);
+		gameBoy.loadState(ByteBuffer.wrap(state));
+	}
+
+	/**
+	 * Returns the number of snapshots that can be restored
+	 *
+	 * @return the number of snapshots
+	 */
+	public int size() {
+		return snapshots.size();
+	}
+
+	/**
+	 * Returns the number of bytes used by the snapshots
+	 *
+	 * @return the memory used
+	 */
+	public long memoryUsed() {
+		return memoryUsed;
+	}
+
+	/**
+	 * Encodes the XOR of the state with the reference as a sequence of pairs:
+	 * the length of a run of zero bytes, then the length and the bytes of the
+	 * following run of non-zero bytes, lengths being written as varints
+	 */
+	private static int encode(byte[] state, byte[] reference, byte[] out) {
+		int size = state.length;
+		int position = 0;
+		int i = 0;
+		while (i < size) {
+			int mismatch = Arrays.mismatch(state, i, size, reference, i, size);
+			int zeros = mismatch < 0 ? size - i : mismatch;
+			i += zeros;
+
+			int start = i;
+			int run = 0;
+			while (i < size && run < MIN_ZERO_RUN) {
+				run = state[i] == reference[i] ? run + 1 : 0;
+				++i;
+			}
+			int end = i - run;
+			i = end;
+
+			position = putVarint(out, position, zeros);
+			position = putVarint(out, position, end - start);
+			for (int j = start; j < end; ++j)
+				out[position++] = (byte) (state[j] ^ reference[j]);
+		}
+		return position;
+	}
+
+	/**
+	 * XORs the state with the bytes encoded by <code>encode</code>
+	 */
+	private static void decode(byte[] data, byte[] state) {
+		int position = 0;
+		int i = 0;
+		while (position < data.length) {
+			int zeros = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[position++];
+				zeros |= (b & 0x7F) << shift;
+				if (b >= 0)
+					break;
+			}
+			int length = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[position++];
+				length |= (b & 0x7F) << shift;
+				if (b >= 0)
+					break;
+			}
+			i += zeros;
+			for (int end = i + length; i < end; ++i)
+				state[i] ^= data[position++];
+		}
+	}
+
+	private static int putVarint(byte[] out, int position, int value) {
+		while ((value & ~0x7F) != 0) {
+			out[position++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out[position++] = (byte) value;
+		return position;
+	}
+}
@@ -0,0 +1,299 @@
+package gameboj.batch;
+
+import gameboj.EmulationLoop;
+import gameboj.GameBoy;
+import gameboj.Preconditions;
+import gameboj.component.lcd.LcdImage;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many independent GameBoys on a work-stealing pool. Each session runs
+ * in slices of whole frames, then goes back to the end of a queue shared by
+ * all the workers, so that all sessions progress in turn. Every task of the
+ * pool runs the session at the head of that queue, and idle workers steal
+ * the waiting tasks. A session whose sink is not ready, or whose audio output
+ * has no room for a whole frame, is not run, and retried a little later.
+ * <p>
+ * The GameBoys should be created from cartridges of the same ROM files, so
+ * that they share their ROM; the opcode tables are always shared.
+ *
+ * @author Francois BURGUET
+ */
+public final class BatchRunner implements AutoCloseable {
+
+	/**
+	 * Default number of frames run by a session before yielding its worker
+	 */
+	public static final int DEFAULT_SLICE_FRAMES = 8;
+	private static final long RETRY_NANOS = 1_000_000;
+
+	/**
+	 * Receiver of the frames of a session
+	 */
+	public interface Sink {
+
+		/**
+		 * Returns true if the sink can receive the frames of the next slice,
+		 * false to delay the session
+		 *
+		 * @return true if the sink is ready
+		 */
+		default boolean ready() {
+			return true;
+		}
+
+		/**
+		 * Returns the number of clock ticks the audio output of the GameBoy
+		 * of the session can still receive, like
+		 * <code>AudioConverter.ticksUntilFull</code>. A slice only runs the
+		 * whole frames that fit, the session being delayed while not even
+		 * one frame fits, so the output must hold at least one frame.
+		 *
+		 * @return the number of ticks, or a negative value if the audio
+		 *         output never delays the session
+		 */
+		default long audioTicks() {
+			return -1;
+		}
+
+		/**
+		 * Called after each frame of the session, on the worker running it
+		 *
+		 * @param session : the session
+		 * @param image : the last image of its GameBoy
+		 */
+		void frameDone(Session session, LcdImage image);
+	}
+
+	/**
+	 * A GameBoy run for a number of frames by the batch runner
+	 */
+	public final class Session implements Runnable {
+		private final GameBoy gameBoy;
+		private final long frames;
+		private final Sink sink;
+		private final CompletableFuture<Session> done = new CompletableFuture<>();
+
+		private volatile long framesRun;
+		private volatile long busyNanos;
+
+		private Session(GameBoy gameBoy, long frames, Sink sink) {
+			this.gameBoy = gameBoy;
+			this.frames = frames;
+			this.sink = sink;
+		}
+
+		@Override
+		public void run() {
+			if (done.isDone() || closed)
+				return;
+			long slice = sliceFrames;
+			if (sink != null) {
+				long audioTicks = sink.audioTicks();
+				if (audioTicks >= 0)
+					slice = Math.min(slice, audioTicks / EmulationLoop.FRAME_TICKS);
+				if (slice == 0 || !sink.ready()) {
+					CompletableFuture.runAsync(this, retry);
+					return;
+				}
+			}
+			try {
+				long start = System.nanoTime();
+				long ticks = gameBoy.ticks();
+				long end = Math.min(frames, framesRun + slice);
+				for (long frame = framesRun; frame < end && !closed; ++frame) {
+					gameBoy.runUntil(gameBoy.ticks() + EmulationLoop.FRAME_TICKS);
+					framesRun = frame + 1;
+					if (sink != null)
+						sink.frameDone(this, gameBoy.lcdController().currentImage());
+				}
+				busyNanos += System.nanoTime() - start;
+				totalTicks.add(gameBoy.ticks() - ticks);
+			} catch (RuntimeException | Error e) {
+				done.completeExceptionally(e);
+				return;
+			}
+
+			if (closed)
+				return;
+			if (framesRun >= frames)
+				done.complete(this);
+			else
+				schedule(this);
+		}
+
+		/**
+		 * Returns the GameBoy of the session, which must not be used until
+		 * the session is done, or the runner closed
+		 *
+		 * @return the GameBoy
+		 */
+		public GameBoy gameBoy() {
+			return gameBoy;
+		}
+
+		/**
+		 * Returns the number of frames run so far
+		 *
+		 * @return the number of frames
+		 */
+		public long framesRun() {
+			return framesRun;
+		}
+
+		/**
+		 * Returns the number of frames emulated per second spent running the
+		 * session
+		 *
+		 * @return the throughput of the session
+		 */
+		public double framesPerSecond() {
+			long nanos = busyNanos;
+			return nanos == 0 ? 0 : framesRun * 1e9 / nanos;
+		}
+
+		/**
+		 * Returns the future completed when the session has run all its
+		 * frames, or completed exceptionally if its GameBoy failed
+		 *
+		 * @return the completion of the session
+		 */
+		public CompletableFuture<Session> done() {
+			return done;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final Executor retry;
+	private final int sliceFrames;
+	private final Set<Session> running = ConcurrentHashMap.newKeySet();
+	private final Queue<Session> queue = new ConcurrentLinkedQueue<>();
+	private final LongAdder totalTicks = new LongAdder();
+	private final long start = System.nanoTime();
+	private volatile boolean closed;
+
+	/**
+	 * Creates a runner using all the processors
+	 */
+	public BatchRunner() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_SLICE_FRAMES);
+	}
+
+	/**
+	 * Creates a runner
+	 *
+	 * @param parallelism : number of workers
+	 * @param sliceFrames : number of frames run by a session before yielding
+	 * @throws IllegalArgumentException if one of the parameters is not
+	 *             positive
+	 */
+	public BatchRunner(int parallelism, int sliceFrames) {
+		Preconditions.checkArgument(parallelism > 0 && sliceFrames > 0);
+		this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		this.retry = CompletableFuture.delayedExecutor(RETRY_NANOS, TimeUnit.NANOSECONDS, pool);
+		this.sliceFrames = sliceFrames;
+	}
+
+	/**
+	 * Schedules the GameBoy to run for the specified number of frames
+	 *
+	 * @param gameBoy : the GameBoy, not used by other threads until the
+	 *            session is done
+	 * @param frames : the number of frames to run
+	 * @param sink : receiver of the frames, or null
+	 * @return the session
+	 * @throws IllegalArgumentException if the number of frames is negative
+	 * @throws NullPointerException if the GameBoy is null
+	 */
+	public Session submit(GameBoy gameBoy, long frames, Sink sink) {
+		Preconditions.checkArgument(frames >= 0);
+		if (gameBoy == null) {
+			throw new NullPointerException();
+		}
+		Session session = new Session(gameBoy, frames, sink);
+		running.add(session);
+		session.done.whenComplete((s, e) -> running.remove(session));
+		if (frames == 0)
+			session.done.complete(session);
+		else
+			schedule(session);
+		return session;
+	}
+
+	/**
+	 * Queues the session and adds a task running the head of the queue. A
+	 * worker pushes the tasks it adds on its own queue and runs them first,
+	 * so a session resubmitting itself there would starve the others.
+	 */
+	private void schedule(Session session) {
+		queue.add(session);
+		try {
+			pool.execute(this::runNext);
+		} catch (RejectedExecutionException e) {
+			session.done.completeExceptionally(new CancellationException());
+		}
+	}
+
+	private void runNext() {
+		Session session = queue.poll();
+		if (session != null)
+			session.run();
+	}
+
+	/**
+	 * Waits for the end of the sessions running when called. The failure of
+	 * a session is only reported by its <code>done</code> future.
+	 */
+	public void awaitAll() {
+		for (Session session : new ArrayList<>(running))
+			session.done.exceptionally(e -> session).join();
+	}
+
+	/**
+	 * Returns the aggregate speed of all the sessions since the creation of
+	 * the runner, in millions of clock ticks per second. A GameBoy running in
+	 * real time runs at about 4.19 MHz.
+	 *
+	 * @return the emulated frequency, in MHz
+	 */
+	public double emulatedMHz() {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return totalTicks.sum() / seconds / 1e6;
+	}
+
+	/**
+	 * Stops the sessions not done yet at the end of their current frame, waits
+	 * for the workers to end, then completes the <code>done</code> futures of
+	 * these sessions with a CancellationException. Their GameBoys can be used
+	 * once this method returns. Must not be called by a sink.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		pool.shutdownNow();
+		boolean interrupted = false;
+		while (!pool.isTerminated()) {
+			try {
+				pool.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		for (Session session : new ArrayList<>(running))
+			session.done.completeExceptionally(new CancellationException());
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,120 @@
+package gameboj.batch;
+
+import gameboj.EmulationLoop;
+import gameboj.GameBoy;
+import gameboj.Preconditions;
+import gameboj.component.apu.SoundOutput;
+import gameboj.component.cartridge.Cartridge;
+import gameboj.component.lcd.LcdController;
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Runs many copies of the same game in lockstep, frame by frame, each with
+ * its own inputs. The copies share the ROM of the cartridge, and their
+ * memories and register files are laid out one machine after the other in a
+ * single native memory block.
+ * After each step, the screens of all the copies are written one after the
+ * other in a single observation buffer, one byte per pixel.
+ * <p>
+ * The actions are bitmasks of the keys held, bit <code>i</code> standing for
+ * the key of ordinal <code>i</code>.
+ *
+ * @author Francois BURGUET
+ */
+public final class LockstepBatch {
+
+	/**
+	 * Size of the screen of one copy in the observation buffer
+	 */
+	public static final int SCREEN_SIZE = LcdController.LCD_WIDTH * LcdController.LCD_HEIGHT;
+
+	private final GameBoy[] gameBoys;
+	private final MemoryArena arena;
+	private final ByteBuffer observations;
+	private final ByteBuffer[] screens;
+
+	/**
+	 * Creates the copies of the game, with a fresh cartridge RAM that is never
+	 * saved, all at the start of the game
+	 *
+	 * @param cartridge : the cartridge of the game, whose ROM is shared
+	 * @param count : number of copies
+	 * @throws IllegalArgumentException if the count is not positive
+	 */
+	public LockstepBatch(Cartridge cartridge, int count) {
+		Preconditions.checkArgument(count > 0);
+		gameBoys = new GameBoy[count];
+		arena = MemoryArena.offHeap(count * GameBoy.OFF_HEAP_STATE_SIZE);
+		observations = ByteBuffer.allocateDirect(count * SCREEN_SIZE);
+		screens = new ByteBuffer[count];
+		for (int i = 0; i < count; ++i) {
+			gameBoys[i] = new GameBoy(cartridge.fork(), SoundOutput.NULL_OUTPUT,
+					arena.subArena(GameBoy.OFF_HEAP_STATE_SIZE));
+			screens[i] = observations.slice(i * SCREEN_SIZE, SCREEN_SIZE);
+		}
+	}
+
+	/**
+	 * Applies the actions and runs every copy for the specified number of
+	 * frames, in parallel, then writes their screens in the observation buffer
+	 *
+	 * @param actions : the keys held by each copy during the step
+	 * @param frames : number of frames to run
+	 * @throws IllegalArgumentException if there is not one action per copy,
+	 *             or if the number of frames is not positive
+	 */
+	public void step(int[] actions, int frames) {
+		Preconditions.checkArgument(actions.length == gameBoys.length && frames > 0);
+		IntStream.range(0, gameBoys.length).parallel().forEach(i -> {
+			GameBoy gb = gameBoys[i];
+			gb.joypad().setKeys(actions[i]);
+			gb.runUntil(gb.ticks() + frames * EmulationLoop.FRAME_TICKS);
+			gb.lcdController().currentImage().writeShades(screens[i].clear());
+		});
+	}
+
+	/**
+	 * Returns the number of copies
+	 *
+	 * @return the number of copies
+	 */
+	public int size() {
+		return gameBoys.length;
+	}
+
+	/**
+	 * Returns the copy of the specified index, which must not be run outside
+	 * of the batch
+	 *
+	 * @param index : index of the copy
+	 * @return the GameBoy
+	 */
+	public GameBoy gameBoy(int index) {
+		return gameBoys[index];
+	}
+
+	/**
+	 * Returns a read-only view of the screens of all the copies, copy
+	 * <code>i</code> starting at <code>i * SCREEN_SIZE</code>, updated by each
+	 * step
+	 *
+	 * @return the observations of the last step
+	 */
+	public ByteBuffer observations() {
+		return observations.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the memories and register files of all the
+	 * copies, those of copy <code>i</code> starting at
+	 * <code>i * GameBoy.OFF_HEAP_STATE_SIZE</code>
+	 *
+	 * @return the memories and register files of all the copies
+	 */
+	public ByteBuffer memory() {
+		return arena.asReadOnlyBuffer();
+	}
+}
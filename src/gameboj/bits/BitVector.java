@@ -2,6 +2,7 @@ package gameboj.bits;
 
 import gameboj.Preconditions;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -65,6 +66,34 @@ public final class BitVector {
 		this.size = vector.length * Integer.SIZE;
 	}
 
+	/**
+	 * Writes the bits of the vector in the buffer, 32 bits at a time
+	 *
+	 * @param buffer : the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for (int chunk : vector)
+			buffer.putInt(chunk);
+	}
+
+	/**
+	 * Reads a vector written by <code>writeTo</code>
+	 *
+	 * @param buffer : the buffer to read from
+	 * @param size : size of the vector, multiple of Integer.SIZE, strictly positive
+	 * @return the vector read
+	 * @throws IllegalArgumentException if the size is invalid
+	 * @throws java.nio.BufferUnderflowException if the buffer is too small
+	 */
+	public static BitVector readFrom(ByteBuffer buffer, int size) {
+		Preconditions.checkArgument(size % Integer.SIZE == 0 && size > 0);
+		int[] vector = new int[size / Integer.SIZE];
+		for (int i = 0; i < vector.length; ++i)
+			vector[i] = buffer.getInt();
+		return new BitVector(vector);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder str = new StringBuilder();
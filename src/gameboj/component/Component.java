@@ -34,6 +34,30 @@ public interface Component {
 	 */
 	void write(int address, int data);
 
+	/**
+	 * Reads the data at the specified address in the component, without
+	 * validating the address. Used by the bus and between components, once
+	 * the address was validated.
+	 * 
+	 * @param address : address to read at, assumed to be a 16 bits value
+	 * @return the data, 8 bit value
+	 */
+	default int readUnchecked(int address) {
+		return read(address);
+	}
+
+	/**
+	 * Writes the data at the specified address in the memory, without
+	 * validating the address and the data. Used by the bus and between
+	 * components, once they were validated.
+	 * 
+	 * @param address : address to write at, assumed to be a 16 bits value
+	 * @param data : the data to write at address, assumed to be an 8 bit value
+	 */
+	default void writeUnchecked(int address, int data) {
+		write(address, data);
+	}
+
 	/**
 	 * Attach the component to the bus
 	 * 
@@ -1,11 +1,13 @@
 package gameboj.component;
 
 import gameboj.AddressMap;
+import gameboj.Bus;
 import gameboj.Preconditions;
 import gameboj.bits.Bits;
 import gameboj.component.cpu.Cpu;
 import gameboj.component.cpu.Cpu.Interrupt;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -15,7 +17,7 @@ import java.util.Objects;
  * @author Gaietan Renault 283350
  */
 
-public class Joypad implements Component {
+public class Joypad implements Component, Stateful {
 
 	private final Cpu cpu;
 	private int keysLine1 = 0xF;
@@ -27,6 +29,8 @@ public class Joypad implements Component {
 		RIGHT, LEFT, UP, DOWN, A, B, SELECT, START
 	}
 
+	private static final Key[] KEYS = Key.values();
+
 	/**
 	 * Creates a new joypad for the specified cpu
 	 * @param cpu, non null
@@ -36,9 +40,23 @@ public class Joypad implements Component {
 		this.cpu = Objects.requireNonNull(cpu);
 	}
 
+	/**
+	 * Attaches the joypad as the handler of P1
+	 * 
+	 * @param bus : the bus to attach the joypad to
+	 */
+	@Override
+	public void attachTo(Bus bus) {
+		bus.attachRegister(this, AddressMap.REG_P1, 0xC0);
+	}
+
 	@Override
 	public int read(int address) {
-		Preconditions.checkBits16(address);
+		return readUnchecked(Preconditions.checkBits16(address));
+	}
+
+	@Override
+	public int readUnchecked(int address) {
 		if (address == AddressMap.REG_P1) {
 			return P1;
 		}
@@ -47,8 +65,13 @@ public class Joypad implements Component {
 
 	@Override
 	public void write(int address, int data) {
-		if (Preconditions.checkBits16(address) == AddressMap.REG_P1) {
-			P1 = 0xC0 + (Bits.extract(Preconditions.checkBits8(data), 4, 2) << 4);
+		writeUnchecked(Preconditions.checkBits16(address), Preconditions.checkBits8(data));
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		if (address == AddressMap.REG_P1) {
+			P1 = 0xC0 + (Bits.extract(data, 4, 2) << 4);
 			if (!Bits.test(P1, 4))
 				P1 = P1 | Bits.clip(4, keysLine1);
 			if (!Bits.test(P1, 5))
@@ -58,6 +81,21 @@ public class Joypad implements Component {
 		}
 	}
 
+	/**
+	 * Saves P1 and the state of the keys
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put((byte) P1).put((byte) keysLine1).put((byte) keysLine2);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		P1 = Byte.toUnsignedInt(buffer.get());
+		keysLine1 = Byte.toUnsignedInt(buffer.get());
+		keysLine2 = Byte.toUnsignedInt(buffer.get());
+	}
+
 	/**
 	 * Fires JOYPAD interrupt on the CPU and updates the key value
 	 * @param key, the key pressed
@@ -89,4 +127,20 @@ public class Joypad implements Component {
 				keysLine2 = Bits.set(keysLine2, key.ordinal() - 4, true);
 		}
 	}
+
+	/**
+	 * Presses the keys of the bitmask and releases the others, firing the
+	 * JOYPAD interrupt if a key is newly pressed
+	 * @param keys, the keys held, bit i standing for the key of ordinal i
+	 */
+	public void setKeys(int keys) {
+		int held = Bits.clip(4, ~keysLine1) | Bits.clip(4, ~keysLine2) << 4;
+		for (int changed = held ^ Bits.clip(KEYS.length, keys); changed != 0; changed &= changed - 1) {
+			int key = Integer.numberOfTrailingZeros(changed);
+			if (Bits.test(keys, key))
+				keyPressed(KEYS[key]);
+			else
+				keyReleased(KEYS[key]);
+		}
+	}
 }
@@ -0,0 +1,31 @@
+package gameboj.component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents an object whose state can be saved in a buffer and restored from
+ * it. The state is written at the position of the buffer, in a fixed layout
+ * only depending on the configuration of the object, and read back in the
+ * same order.
+ *
+ * @author Francois BURGUET
+ */
+public interface Stateful {
+
+	/**
+	 * Writes the state of the object in the buffer, advancing its position
+	 *
+	 * @param buffer : the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	void saveState(ByteBuffer buffer);
+
+	/**
+	 * Restores the state of the object from the buffer, advancing its position
+	 *
+	 * @param buffer : the buffer to read from, written by
+	 *            <code>saveState</code> on an object of the same configuration
+	 * @throws java.nio.BufferUnderflowException if the buffer is too small
+	 */
+	void loadState(ByteBuffer buffer);
+}
@@ -1,10 +1,13 @@
 package gameboj.component;
 
 import gameboj.AddressMap;
+import gameboj.Bus;
 import gameboj.bits.Bits;
+import gameboj.component.apu.Apu;
 import gameboj.component.cpu.Cpu;
 import gameboj.component.cpu.Cpu.Interrupt;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import static gameboj.Preconditions.checkBits16;
@@ -18,9 +21,10 @@ import static gameboj.bits.Bits.test;
  * @author Francois BURGUET 288683
  * @author Gaietan Renault 283350
  */
-public final class Timer implements Component, Clocked {
+public final class Timer implements Component, Clocked, Stateful {
 
 	private final Cpu cpu;
+	private final Apu apu;
 
 	private int DIV;
 	private int TIMA;
@@ -28,19 +32,22 @@ public final class Timer implements Component, Clocked {
 	private int TAC;
 
 	private static final int[] INDEX = { 9, 3, 5, 7 };
+	private static final int FRAME_SEQUENCER_INDEX = 12;
 
 	private enum regName {
 		DIV, TAC
 	}
 
 	/**
-	 * Initialize a timer for the specified CPU
+	 * Initialize a timer for the specified CPU and APU
 	 * 
 	 * @param cpu : cpu of the GB
-	 * @throws NullPointerException if the CPU is null
+	 * @param apu : apu whose frame sequencer is driven by DIV
+	 * @throws NullPointerException if the CPU or the APU is null
 	 */
-	public Timer(Cpu cpu) {
+	public Timer(Cpu cpu, Apu apu) {
 		this.cpu = Objects.requireNonNull(cpu);
+		this.apu = Objects.requireNonNull(apu);
 	}
 
 	@Override
@@ -48,6 +55,17 @@ public final class Timer implements Component, Clocked {
 		update(regName.DIV, clip(16, DIV + 4));
 	}
 
+	/**
+	 * Attaches the timer as the handler of its registers
+	 * 
+	 * @param bus : the bus to attach the timer to
+	 */
+	@Override
+	public void attachTo(Bus bus) {
+		bus.attachRegisters(this, AddressMap.REG_DIV, AddressMap.REG_TAC);
+		bus.attachRegister(this, AddressMap.REG_TAC, 0xF8);
+	}
+
 	/**
 	 * Reads the data at the specified address. If address is 0xFF04 returns the 8
 	 * MSB of the main counter
@@ -58,7 +76,11 @@ public final class Timer implements Component, Clocked {
 	 */
 	@Override
 	public int read(int address) {
-		checkBits16(address);
+		return readUnchecked(checkBits16(address));
+	}
+
+	@Override
+	public int readUnchecked(int address) {
         return switch (address) {
             case AddressMap.REG_DIV -> Bits.extract(DIV, 8, 8);
             case AddressMap.REG_TIMA -> TIMA;
@@ -78,14 +100,33 @@ public final class Timer implements Component, Clocked {
 	 */
 	@Override
 	public void write(int address, int data) {
-        switch (checkBits16(address)) {
+		writeUnchecked(checkBits16(address), checkBits8(data));
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+        switch (address) {
             case AddressMap.REG_DIV -> update(regName.DIV, 0);
-            case AddressMap.REG_TIMA -> TIMA = checkBits8(data);
-            case AddressMap.REG_TMA -> TMA = checkBits8(data);
-            case AddressMap.REG_TAC -> update(regName.TAC, checkBits8(data));
+            case AddressMap.REG_TIMA -> TIMA = data;
+            case AddressMap.REG_TMA -> TMA = data;
+            case AddressMap.REG_TAC -> update(regName.TAC, data);
         }
 	}
 
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putShort((short) DIV);
+		buffer.put((byte) TIMA).put((byte) TMA).put((byte) TAC);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		DIV = Short.toUnsignedInt(buffer.getShort());
+		TIMA = Byte.toUnsignedInt(buffer.get());
+		TMA = Byte.toUnsignedInt(buffer.get());
+		TAC = Byte.toUnsignedInt(buffer.get());
+	}
+
 	private boolean state() {
 		return test(TAC, 2) && test(DIV, INDEX[clip(2, TAC)]);
 	}
@@ -102,10 +143,13 @@ public final class Timer implements Component, Clocked {
 
 	private void update(regName reg, int value) {
 		boolean s0 = state();
+		boolean f0 = test(DIV, FRAME_SEQUENCER_INDEX);
 		if (reg == regName.TAC)
 			TAC = value;
 		if (reg == regName.DIV)
 			DIV = value;
 		incIfChange(s0);
+		if (f0 && !test(DIV, FRAME_SEQUENCER_INDEX))
+			apu.clockFrameSequencer();
 	}
 }
@@ -1,14 +1,19 @@
 package gameboj.component.apu;
 
+import gameboj.Bus;
 import gameboj.Register;
 import gameboj.RegisterFile;
 import gameboj.component.Clocked;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
 
 import static gameboj.AddressMap.*;
 import static gameboj.bits.Bits.*;
 
-public final class Apu implements Component, Clocked {
+public final class Apu implements Component, Clocked, Stateful {
     public enum ChannelType {
         SQUARE_A, SQUARE_B, WAVE, NOISE
     }
@@ -21,17 +26,28 @@ public final class Apu implements Component, Clocked {
         0x00, 0x00, 0x70,
     };
 
-    private final RegisterFile<Reg> regFile = new RegisterFile<>(Reg.values());
+    private final RegisterFile<Reg> regFile;
     private final SoundChannel[] channels;
     private final SoundOutput output;
     private final int[] amplitudes;
     private boolean enabled;
+    private int frameSequencerStep;
 
     public Apu(SoundOutput output) {
-        Sweep sweepChannel    = new Sweep();
-        Square squareBChannel = new Square();
-        Wave waveChannel      = new Wave();
-        Noise noiseChannel    = new Noise();
+        this(output, MemoryArena.heap());
+    }
+
+    /**
+     * Creates the APU, with its registers and wave RAM allocated in the arena
+     *
+     * @param output : the sound output
+     * @param arena : the arena holding the state of the APU
+     */
+    public Apu(SoundOutput output, MemoryArena arena) {
+        Sweep sweepChannel    = new Sweep(arena);
+        Square squareBChannel = new Square(arena);
+        Wave waveChannel      = new Wave(arena);
+        Noise noiseChannel    = new Noise(arena);
 
         this.channels = new SoundChannel[] {
                 sweepChannel,
@@ -41,33 +57,65 @@ public final class Apu implements Component, Clocked {
         };
         this.amplitudes = new int[4];
         this.output = output;
+        this.regFile = new RegisterFile<>(Reg.values(), arena);
     }
 
     @Override
     public void cycle(long cycle) {
-        if (!enabled) return;
-        for (int i = 0; i < channels.length; ++i)
-            amplitudes[i] = channels[i].clock();
-
+        if (!enabled) {
+            // A powered down APU outputs silence, keeping recordings in time
+            if (output != null)
+                output.play(0, 0);
+            return;
+        }
         int outputSelect = regFile.get(Reg.NR51);
+        int live = 0;
+        for (int i = 0; i < channels.length; ++i) {
+            if (channels[i].isEnabled()) {
+                live |= mask(i);
+                if (test(outputSelect, i) || test(outputSelect, i + 4))
+                    amplitudes[i] = channels[i].clock();
+                else
+                    channels[i].skip();
+            }
+        }
+
+        int routed = outputSelect & (live | live << 4);
         int left = 0;
         int right = 0;
 
-        for (int i = 0; i < channels.length; i++) {
-            if (test(outputSelect, i + 4)) left += amplitudes[i];
-            if (test(outputSelect, i)) right += amplitudes[i];
-        }
-        left /= 4;
-        right /= 4;
+        if (routed != 0) {
+            for (int i = 0; i < channels.length; i++) {
+                if (test(routed, i + 4)) left += amplitudes[i];
+                if (test(routed, i)) right += amplitudes[i];
+            }
+            left /= 4;
+            right /= 4;
 
-        int volumes = regFile.get(Reg.NR50);
-        left *= extract(volumes, 4, 3);
-        right *= clip(3, volumes);
+            int volumes = regFile.get(Reg.NR50);
+            left *= extract(volumes, 4, 3);
+            right *= clip(3, volumes);
+        }
 
         if (output != null)
             output.play((byte) left, (byte) right);
     }
 
+    /**
+     * Advances the frame sequencer by one step. Called by the timer at 512 Hz,
+     * on each falling edge of bit 4 of DIV.
+     */
+    public void clockFrameSequencer() {
+        if (!enabled) return;
+        for (SoundChannel c : channels)
+            c.step(frameSequencerStep);
+        frameSequencerStep = (frameSequencerStep + 1) % 8;
+    }
+
+    @Override public void attachTo(Bus bus) {
+        bus.attachRegisters(this, REGS_CH1_START, REG_WAVE_TAB_END);
+    }
+
     @Override public int read(int address) {
         return read(address, false);
     }
@@ -130,6 +178,24 @@ public final class Apu implements Component, Clocked {
         }
     }
 
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        regFile.saveState(buffer);
+        buffer.put((byte) (enabled ? 1 : 0));
+        buffer.putInt(frameSequencerStep);
+        for (SoundChannel c : channels)
+            c.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        regFile.loadState(buffer);
+        enabled = buffer.get() != 0;
+        frameSequencerStep = buffer.getInt();
+        for (SoundChannel c : channels)
+            c.loadState(buffer);
+    }
+
     private void stop() {
         if (output != null)
             output.stop();
@@ -147,6 +213,7 @@ public final class Apu implements Component, Clocked {
                 write(address, 0x00);
         }
 
+        frameSequencerStep = 0;
         for (SoundChannel c : channels)
             c.start();
 
@@ -0,0 +1,166 @@
+package gameboj.component.apu;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static gameboj.GameBoy.CLOCK_FREQ;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Sound output recording the APU samples without any audio device.
+ * Samples are decimated to exactly 44.1 kHz, 8-bit unsigned stereo (the
+ * format played by the GUI), and either streamed to a WAV or raw PCM file or
+ * only folded into a rolling hash. The clock frequency is not a multiple of
+ * the sample rate: a sample is kept every 95 or 96 clock ticks, so that the
+ * recording lasts as long as the emulated run.
+ */
+public final class AudioRecorder implements SoundOutput, Closeable {
+    public enum Format {
+        WAV, RAW
+    }
+
+    public static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final Format format;
+
+    private long hash = FNV_OFFSET;
+    private long samples;
+    // Time left until the next sample, in 1 / (CLOCK_FREQ * SAMPLE_RATE) s
+    private long phase;
+
+    private AudioRecorder(FileChannel channel, Format format) {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = channel == null ? null : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a recorder streaming the samples to the specified file
+     *
+     * @param file : the file to write, created or truncated
+     * @param format : WAV (with header) or raw PCM samples
+     * @return a recorder writing to <code>file</code>
+     * @throws IOException if the file cannot be opened
+     */
+    public static AudioRecorder ofFile(File file, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE);
+        if (format == Format.WAV)
+            channel.position(WAV_HEADER_SIZE);
+        return new AudioRecorder(channel, format);
+    }
+
+    /**
+     * Creates a recorder that only computes the hash of the samples
+     *
+     * @return a recorder writing nothing
+     */
+    public static AudioRecorder hashing() {
+        return new AudioRecorder(null, Format.RAW);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        flush();
+    }
+
+    @Override
+    public void play(int left, int right) {
+        phase -= SAMPLE_RATE;
+        if (phase >= 0)
+            return;
+        phase += CLOCK_FREQ;
+
+        hash = (hash ^ (left & 0xFF)) * FNV_PRIME;
+        hash = (hash ^ (right & 0xFF)) * FNV_PRIME;
+        ++samples;
+
+        if (buffer != null) {
+            buffer.put((byte) left);
+            buffer.put((byte) right);
+            if (!buffer.hasRemaining())
+                flush();
+        }
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of all the samples recorded so far
+     *
+     * @return the hash of the audio stream
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Returns the number of stereo samples recorded so far
+     *
+     * @return the number of samples
+     */
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * Writes the pending samples and, for WAV files, the header, then closes the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null || !channel.isOpen())
+            return;
+        flush();
+        if (format == Format.WAV)
+            channel.write(wavHeader(samples * CHANNELS), 0);
+        channel.close();
+    }
+
+    private void flush() {
+        if (buffer == null)
+            return;
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    private static ByteBuffer wavHeader(long dataSize) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] { 'R', 'I', 'F', 'F' });
+        header.putInt((int) (dataSize + WAV_HEADER_SIZE - 8));
+        header.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) CHANNELS);
+        header.putInt(SAMPLE_RATE);
+        header.putInt(SAMPLE_RATE * CHANNELS);
+        header.putShort((short) CHANNELS);
+        header.putShort((short) Byte.SIZE);
+        header.put(new byte[] { 'd', 'a', 't', 'a' });
+        header.putInt((int) dataSize);
+        return header.flip();
+    }
+}
@@ -1,29 +1,32 @@
 package gameboj.component.apu;
 
+import gameboj.component.Stateful;
 
-import static gameboj.GameBoy.CLOCK_FREQ;
-import static gameboj.bits.Bits.test;
+import java.nio.ByteBuffer;
 
-public class LengthCounter {
-    private final static int DIVIDER = (int) CLOCK_FREQ / 256;
+import static gameboj.bits.Bits.test;
 
+public class LengthCounter implements Stateful {
     protected final int fullLength;
     private int length;
-    private int counter;
+    private boolean firstHalf;
     private boolean enabled;
 
     public LengthCounter(int fullLength) {
         this.fullLength = fullLength;
     }
 
-    public void start() { counter = DIVIDER / 2; }
+    public void start() { firstHalf = false; }
 
-    public void clock() {
-        if (++counter == DIVIDER) {
-            counter = 0;
-            if (enabled && length > 0) {
-                length--;
-            }
+    /**
+     * Called on every frame sequencer step, only even steps clock the length
+     *
+     * @param step : index of the frame sequencer step, between 0 and 7
+     */
+    public void step(int step) {
+        firstHalf = step % 2 == 0;
+        if (firstHalf && enabled && length > 0) {
+            length--;
         }
     }
 
@@ -32,16 +35,16 @@ public class LengthCounter {
         boolean trigger = test(data, 7);
 
         if (enabled && (length == 0 && trigger)) {
-            if (enable && counter < DIVIDER / 2) {
+            if (enable && firstHalf) {
                 setLength(fullLength - 1);
             } else {
                 setLength(fullLength);
             }
         } else if (enable) {
-            if (length > 0 && counter < DIVIDER / 2) {
+            if (length > 0 && firstHalf) {
                 length--;
             }
-            if (length == 0 && trigger && counter < DIVIDER / 2) {
+            if (length == 0 && trigger && firstHalf) {
                 setLength(fullLength - 1);
             }
         } else if (length == 0 && trigger) {
@@ -57,4 +60,18 @@ public class LengthCounter {
     public int length() { return length; }
 
     public boolean isEnabled() { return enabled; }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putShort((short) length);
+        buffer.put((byte) ((firstHalf ? 1 : 0) | (enabled ? 2 : 0)));
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        length = buffer.getShort();
+        int flags = buffer.get();
+        firstHalf = test(flags, 0);
+        enabled = test(flags, 1);
+    }
 }
@@ -1,10 +1,19 @@
 package gameboj.component.apu;
 
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
+
 import static gameboj.bits.Bits.*;
 import static gameboj.component.apu.Apu.ChannelType;
 
 public final class Noise extends SoundChannel {
     private final static int LFSR_INITIAL = 0x7FF;
+    private final static int LFSR_WIDTH = 15;
+    // JUMP[w][k][b] is the LFSR state reached after 2^k steps from the state
+    // with only bit b set, w being the width mode. As the LFSR is linear over
+    // GF(2), any jump is the XOR of the columns selected by the set bits.
+    private final static int[][][] JUMP = { jumpTable(false), jumpTable(true) };
 
     private final VolumeEnvelope envelope;
 
@@ -12,18 +21,18 @@ public final class Noise extends SoundChannel {
     private int lastLFSR;
     private int frequencyTimer;
     private int frequencyDivisor;
+    private int pendingTicks;
 
-    Noise() {
-        super(ChannelType.NOISE);
+    Noise(MemoryArena arena) {
+        super(ChannelType.NOISE, arena);
         envelope = new VolumeEnvelope();
         lfsr = LFSR_INITIAL;
     }
 
     @Override
     public int clock() {
-        envelope.clock();
-
-        if (!(updateLength() && dacEnabled)) return 0;
+        if (!(channelEnabled && dacEnabled)) return 0;
+        if (pendingTicks != 0) catchUp();
         if (--frequencyTimer == 0) {
             frequencyTimer = frequencyDivisor;
             lastLFSR = updateLFSR();
@@ -32,10 +41,22 @@ public final class Noise extends SoundChannel {
         return lastLFSR * envelope.getVolume();
     }
 
+    /**
+     * The output is not needed: the ticks are only counted and the LFSR
+     * is brought up to date in one jump when it is next observed, or at the
+     * latest at the next step of the frame sequencer, so that fewer than 8192
+     * ticks are ever pending
+     */
+    @Override
+    void skip() {
+        ++pendingTicks;
+    }
+
     @Override
     public void write(int address, int data) {
         if (regStartAddress <= address && address < regEndAddress) {
             Reg reg = Reg.values()[address - regStartAddress];
+            if (pendingTicks != 0) catchUp();
             super.write(address, data);
             switch (reg) {
                 case NR1:
@@ -56,6 +77,13 @@ public final class Noise extends SoundChannel {
         }
     }
 
+    @Override
+    void step(int step) {
+        if (pendingTicks != 0) catchUp();
+        super.step(step);
+        if (step == 7) envelope.clock();
+    }
+
     @Override
     protected void trigger() {
         lfsr = LFSR_INITIAL;
@@ -69,14 +97,94 @@ public final class Noise extends SoundChannel {
         envelope.start();
     }
 
+    private void catchUp() {
+        int ticks = pendingTicks;
+        pendingTicks = 0;
+        if (frequencyTimer <= 0 || frequencyTimer > ticks) {
+            frequencyTimer -= ticks;
+            return;
+        }
+
+        int remaining = ticks - frequencyTimer;
+        int steps = 1;
+        if (frequencyDivisor > 0) {
+            steps += remaining / frequencyDivisor;
+            frequencyTimer = frequencyDivisor - remaining % frequencyDivisor;
+        } else {
+            frequencyTimer = -remaining;
+        }
+        lastLFSR = advanceLFSR(steps);
+    }
+
     private int updateLFSR() {
-        int xor = ((lfsr & 0b01) ^ ((lfsr & 0b10) >> 1)) & 1;
-        lfsr = (lfsr >> 1) | (xor << 14);
-        if (widthMode()) {
-            lfsr |= xor << 6;
+        lfsr = step(lfsr, widthMode());
+        return 1 & ~lfsr;
+    }
+
+    /**
+     * Advances the LFSR by the given number of steps at once
+     *
+     * @param steps : number of steps, positive
+     * @return the output of the channel after the last step
+     */
+    int advanceLFSR(int steps) {
+        int[][] jump = JUMP[widthMode() ? 1 : 0];
+        for (int k = 0; steps != 0; ++k, steps >>>= 1) {
+            if ((steps & 1) != 0) {
+                int[] columns = jump[k];
+                int state = lfsr;
+                int next = 0;
+                for (int b = 0; state != 0; ++b, state >>>= 1)
+                    if ((state & 1) != 0) next ^= columns[b];
+                lfsr = next;
+            }
         }
         return 1 & ~lfsr;
     }
 
+    private static int step(int lfsr, boolean widthMode) {
+        int xor = (lfsr ^ (lfsr >> 1)) & 1;
+        lfsr = (lfsr >> 1) | (xor << 14);
+        if (widthMode) {
+            lfsr = set(lfsr, 6, xor == 1);
+        }
+        return lfsr;
+    }
+
+    private static int[][] jumpTable(boolean widthMode) {
+        int[][] table = new int[Integer.SIZE - 1][LFSR_WIDTH];
+        for (int b = 0; b < LFSR_WIDTH; ++b)
+            table[0][b] = step(mask(b), widthMode);
+        for (int k = 1; k < table.length; ++k) {
+            for (int b = 0; b < LFSR_WIDTH; ++b) {
+                int state = table[k - 1][b];
+                int next = 0;
+                for (int c = 0; state != 0; ++c, state >>>= 1)
+                    if ((state & 1) != 0) next ^= table[k - 1][c];
+                table[k][b] = next;
+            }
+        }
+        return table;
+    }
+
     private boolean widthMode() { return test(regFile.get(Reg.NR3), 3); }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        envelope.saveState(buffer);
+        buffer.putInt(lfsr).putInt(lastLFSR).putInt(frequencyTimer)
+                .putInt(frequencyDivisor).putInt(pendingTicks);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        envelope.loadState(buffer);
+        lfsr = buffer.getInt();
+        lastLFSR = buffer.getInt();
+        frequencyTimer = buffer.getInt();
+        frequencyDivisor = buffer.getInt();
+        pendingTicks = buffer.getInt();
+    }
 }
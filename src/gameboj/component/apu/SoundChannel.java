@@ -3,12 +3,16 @@ package gameboj.component.apu;
 import gameboj.Register;
 import gameboj.RegisterFile;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
 
 import static gameboj.bits.Bits.*;
 import static gameboj.AddressMap.*;
 import static gameboj.component.apu.Apu.ChannelType;
 
-public abstract class SoundChannel implements Component {
+public abstract class SoundChannel implements Component, Stateful {
     private final static int[][] CHANNEL_MASKS = new int[][] {
             {0x80, 0x3F, 0x00, 0xFF, 0xBF},
             {0xFF, 0x3F, 0x00, 0xFF, 0xBF},
@@ -23,7 +27,7 @@ public abstract class SoundChannel implements Component {
         NR0, NR1, NR2, NR3, NR4
     }
 
-    final RegisterFile<Reg> regFile = new RegisterFile<>(Reg.values());
+    final RegisterFile<Reg> regFile;
 
     final int regStartAddress;
     final int regEndAddress;
@@ -33,7 +37,8 @@ public abstract class SoundChannel implements Component {
     boolean dacEnabled;
     boolean channelEnabled;
 
-    SoundChannel(ChannelType type) {
+    SoundChannel(ChannelType type, MemoryArena arena) {
+        regFile = new RegisterFile<>(Reg.values(), arena);
         regStartAddress = REGS_CH_START[type.ordinal()];
         regEndAddress = REGS_CH_END[type.ordinal()];
         channelMasks = CHANNEL_MASKS[type.ordinal()];
@@ -44,6 +49,33 @@ public abstract class SoundChannel implements Component {
 
     public abstract int clock();
 
+    /**
+     * Clocks the channel when its output is not routed to any terminal
+     */
+    void skip() {
+        clock();
+    }
+
+    /**
+     * Saves the registers, the length counter and the enable flags, subclasses
+     * append their own state
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        regFile.saveState(buffer);
+        length.saveState(buffer);
+        buffer.put((byte) ((dacEnabled ? 1 : 0) | (channelEnabled ? 2 : 0)));
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        regFile.loadState(buffer);
+        length.loadState(buffer);
+        int flags = buffer.get();
+        dacEnabled = test(flags, 0);
+        channelEnabled = test(flags, 1);
+    }
+
     protected abstract void trigger();
 
     protected abstract void start();
@@ -78,19 +110,25 @@ public abstract class SoundChannel implements Component {
                     channelEnabled = dacEnabled;
                     trigger();
                 }
+                updateLength();
             }
         }
     }
 
-    boolean updateLength() {
-        length.clock();
-        if (!length.isEnabled()) {
-            return channelEnabled;
-        }
-        if (channelEnabled && length.length() == 0) {
+    /**
+     * Updates the units driven by the frame sequencer
+     *
+     * @param step : index of the frame sequencer step, between 0 and 7
+     */
+    void step(int step) {
+        length.step(step);
+        updateLength();
+    }
+
+    private void updateLength() {
+        if (length.isEnabled() && length.length() == 0) {
             channelEnabled = false;
         }
-        return channelEnabled;
     }
 
     int frequency() {
@@ -1,5 +1,9 @@
 package gameboj.component.apu;
 
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
+
 import static gameboj.bits.Bits.*;
 import static gameboj.component.apu.Apu.ChannelType;
 
@@ -17,13 +21,13 @@ public class Square extends SoundChannel{
     private int freqDiv;
     private int duty;
 
-    Square(ChannelType type) {
-        super(type);
+    Square(ChannelType type, MemoryArena arena) {
+        super(type, arena);
         envelope = new VolumeEnvelope();
     }
 
-    Square() {
-        this(ChannelType.SQUARE_B);
+    Square(MemoryArena arena) {
+        this(ChannelType.SQUARE_B, arena);
     }
 
     @Override public void write(int address, int data) {
@@ -44,13 +48,8 @@ public class Square extends SoundChannel{
     }
 
     @Override public int clock() {
-        envelope.clock();
-        if (!(updateLength() && dacEnabled))
+        if (!(channelEnabled && dacEnabled))
             return 0;
-        return reallyClock();
-    }
-
-    int reallyClock() {
         if (--freqDiv == 0) {
             freqDiv = frequency() * 4;
             duty = test(DUTY_PATTERN[dutyPattern()], wavePosition) ? 1 : 0;
@@ -59,6 +58,11 @@ public class Square extends SoundChannel{
         return duty * envelope.getVolume();
     }
 
+    @Override void step(int step) {
+        super.step(step);
+        if (step == 7) envelope.clock();
+    }
+
     @Override protected void trigger() {
         freqDiv = 1;
         wavePosition = 0;
@@ -78,4 +82,20 @@ public class Square extends SoundChannel{
         int msb = clip(3, regFile.get(Reg.NR4));
         return make16(msb, lsb);
     }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        envelope.saveState(buffer);
+        buffer.putInt(wavePosition).putInt(freqDiv).putInt(duty);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        envelope.loadState(buffer);
+        wavePosition = buffer.getInt();
+        freqDiv = buffer.getInt();
+        duty = buffer.getInt();
+    }
 }
@@ -1,12 +1,13 @@
 package gameboj.component.apu;
 
-import static gameboj.GameBoy.CLOCK_FREQ;
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
+
 import static gameboj.bits.Bits.*;
 import static gameboj.component.apu.Apu.ChannelType;
 
 public final class Sweep extends Square {
-    private final static int DIVIDER = (int) CLOCK_FREQ / 128;
-
     private boolean counterEnabled;
     private boolean isIncrementing;
     private boolean overflow;
@@ -14,12 +15,11 @@ public final class Sweep extends Square {
 
     private int shadowFreq;
     private int sweepPeriod;
-    private int counter;
     private int timer;
     private int shift;
 
-    Sweep() {
-        super(ChannelType.SQUARE_A);
+    Sweep(MemoryArena arena) {
+        super(ChannelType.SQUARE_A, arena);
     }
 
     @Override
@@ -33,10 +33,12 @@ public final class Sweep extends Square {
                     negate = test(data, 3);
                     shift = clip(3, data);
                     if (isIncrementing && !negate) overflow = true;
+                    updateSweep();
                 }
                 case NR4 -> {
                     if (test(data, 7)) {
                         triggerSweep();
+                        updateSweep();
                     }
                 }
                 default -> {
@@ -52,33 +54,28 @@ public final class Sweep extends Square {
     }
 
     @Override
-    public int clock() {
-        envelope.clock();
-        // Avoid short-circuit evaluation
-        boolean b = updateLength();
-        b = updateSweep() && b;
-        if (!(b && dacEnabled)) return 0;
-        return reallyClock();
+    void step(int step) {
+        super.step(step);
+        if (step == 2 || step == 6) {
+            clockSweep();
+            updateSweep();
+        }
     }
 
     private void startSweep() {
         counterEnabled = false;
-        counter = DIVIDER / 4;
     }
 
     private void clockSweep() {
-        if (++counter == DIVIDER) {
-            counter = 0;
-            if (counterEnabled && --timer == 0) {
-                timer = sweepPeriod == 0 ? 8 : sweepPeriod;
-                if (sweepPeriod != 0) {
-                    int newFreq = updateShadowFrequency();
-                    if (!overflow && shift != 0) {
-                        shadowFreq = newFreq;
-                        regFile.set(Reg.NR3, clip(8, shadowFreq));
-                        regFile.set(Reg.NR4, extract(shadowFreq, 8, 3));
-                        updateShadowFrequency();
-                    }
+        if (counterEnabled && --timer == 0) {
+            timer = sweepPeriod == 0 ? 8 : sweepPeriod;
+            if (sweepPeriod != 0) {
+                int newFreq = updateShadowFrequency();
+                if (!overflow && shift != 0) {
+                    shadowFreq = newFreq;
+                    regFile.set(Reg.NR3, clip(8, shadowFreq));
+                    regFile.set(Reg.NR4, extract(shadowFreq, 8, 3));
+                    updateShadowFrequency();
                 }
             }
         }
@@ -108,9 +105,29 @@ public final class Sweep extends Square {
         return newFreq;
     }
 
-    private boolean updateSweep() {
-        clockSweep();
-        if (channelEnabled && overflow) channelEnabled = false;
-        return channelEnabled;
+    private void updateSweep() {
+        if (overflow) channelEnabled = false;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.put((byte) ((counterEnabled ? 1 : 0) | (isIncrementing ? 2 : 0)
+                | (overflow ? 4 : 0) | (negate ? 8 : 0)));
+        buffer.putInt(shadowFreq).putInt(sweepPeriod).putInt(timer).putInt(shift);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        int flags = buffer.get();
+        counterEnabled = test(flags, 0);
+        isIncrementing = test(flags, 1);
+        overflow = test(flags, 2);
+        negate = test(flags, 3);
+        shadowFreq = buffer.getInt();
+        sweepPeriod = buffer.getInt();
+        timer = buffer.getInt();
+        shift = buffer.getInt();
     }
 }
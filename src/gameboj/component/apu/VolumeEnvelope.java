@@ -1,15 +1,17 @@
 package gameboj.component.apu;
 
-import static gameboj.GameBoy.CLOCK_FREQ;
+import gameboj.component.Stateful;
+
+import java.nio.ByteBuffer;
+
 import static gameboj.bits.Bits.clip;
 import static gameboj.bits.Bits.test;
 
-public final class VolumeEnvelope {
+public final class VolumeEnvelope implements Stateful {
     private enum Direction {
         INCR, DECR
     }
 
-    private final static int DIVIDER = (int) CLOCK_FREQ / 64;
     private final static int MIN_VOLUME = 0;
     private final static int MAX_VOLUME = 15;
 
@@ -17,7 +19,7 @@ public final class VolumeEnvelope {
     private int initialVolume;
     private int period;
     private int volume;
-    private int counter;
+    private int timer;
     private boolean stopped;
 
     private boolean isEnabled() { return period > 0; }
@@ -30,24 +32,26 @@ public final class VolumeEnvelope {
 
     public void start() {
         stopped = true;
-        counter = DIVIDER / 8;
     }
 
     void trigger() {
         volume = initialVolume;
-        counter = 0;
+        timer = period;
         stopped = false;
     }
 
+    /**
+     * Called on step 7 of the frame sequencer (64 Hz)
+     */
     void clock() {
-        if (stopped) return;
+        if (stopped || !isEnabled()) return;
         if ((volume == MIN_VOLUME && envelopeDirection == Direction.DECR)
             || (volume == MAX_VOLUME && envelopeDirection == Direction.INCR)) {
                 stopped = true;
                 return;
         }
-        if (++counter == period * DIVIDER) {
-            counter = 0;
+        if (--timer <= 0) {
+            timer = period;
             volume += envelopeDirection == Direction.DECR ? -1 : 1;
         }
     }
@@ -56,4 +60,22 @@ public final class VolumeEnvelope {
         if (isEnabled()) return volume;
         else return initialVolume;
     }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (envelopeDirection == null ? -1 : envelopeDirection.ordinal()));
+        buffer.put((byte) initialVolume).put((byte) period).put((byte) volume).put((byte) timer);
+        buffer.put((byte) (stopped ? 1 : 0));
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        int direction = buffer.get();
+        envelopeDirection = direction < 0 ? null : Direction.values()[direction];
+        initialVolume = buffer.get();
+        period = buffer.get();
+        volume = buffer.get();
+        timer = buffer.get();
+        stopped = buffer.get() != 0;
+    }
 }
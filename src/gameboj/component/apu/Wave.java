@@ -1,12 +1,17 @@
 package gameboj.component.apu;
 
+import gameboj.component.memory.MemoryArena;
 import gameboj.component.memory.Ram;
 import gameboj.component.apu.Apu.ChannelType;
 
+import java.nio.ByteBuffer;
+
 import static gameboj.AddressMap.*;
 import static gameboj.bits.Bits.*;
 
 public final class Wave extends SoundChannel {
+    private final static int NO_RECENT_READ = 65_536;
+
     private final Ram waveRAM;
 
     private boolean triggered;
@@ -17,10 +22,10 @@ public final class Wave extends SoundChannel {
     private int wavePosition;
     private int freqDiv;
 
-    Wave() {
-        super(ChannelType.WAVE);
-        waveRAM = new Ram(REG_WAVE_TAB_SIZE);
-        sinceLastRead = 65_536;
+    Wave(MemoryArena arena) {
+        super(ChannelType.WAVE, arena);
+        waveRAM = arena.allocate(REG_WAVE_TAB_SIZE);
+        sinceLastRead = NO_RECENT_READ;
     }
 
     @Override
@@ -55,7 +60,10 @@ public final class Wave extends SoundChannel {
                 case NR1 -> length.setLength(length.fullLength - data);
                 case NR4 -> { // obscure behavior
                     if (test(data, 7)) {
-                        if (isEnabled() && freqDiv == 2) {
+                        // the APU does not clock idle channels
+                        if (!isEnabled()) {
+                            sinceLastRead = NO_RECENT_READ;
+                        } else if (freqDiv == 2) {
                             int pos = wavePosition / 2;
                             if (pos < 4) {
                                 waveRAM.write(0, waveRAM.read(pos));
@@ -76,7 +84,7 @@ public final class Wave extends SoundChannel {
     @Override
     public int clock() {
         sinceLastRead++;
-        if (!(updateLength() && dacEnabled)) return 0;
+        if (!(channelEnabled && dacEnabled)) return 0;
         if (!test(regFile.get(Reg.NR0), 7)) return 0;
 
         if (--freqDiv == 0) {
@@ -126,4 +134,26 @@ public final class Wave extends SoundChannel {
     private int volume() {
         return extract(regFile.get(Reg.NR2), 5, 2);
     }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        waveRAM.saveState(buffer);
+        buffer.put((byte) (triggered ? 1 : 0));
+        buffer.putInt(sinceLastRead).putInt(lastReadAddress).putInt(this.buffer)
+                .putInt(output).putInt(wavePosition).putInt(freqDiv);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        waveRAM.loadState(buffer);
+        triggered = buffer.get() != 0;
+        sinceLastRead = buffer.getInt();
+        lastReadAddress = buffer.getInt();
+        this.buffer = buffer.getInt();
+        output = buffer.getInt();
+        wavePosition = buffer.getInt();
+        freqDiv = buffer.getInt();
+    }
 }
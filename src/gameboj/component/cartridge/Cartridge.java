@@ -1,56 +1,207 @@
 package gameboj.component.cartridge;
 
+import gameboj.Preconditions;
+import gameboj.component.Clocked;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
+import gameboj.component.memory.Ram;
 import gameboj.component.memory.Rom;
+import gameboj.component.memory.RomRegistry;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 import static gameboj.Preconditions.checkBits16;
 import static gameboj.Preconditions.checkBits8;
 
 /**
- * Represents a cartridge of type 0
+ * Represents a cartridge, with the memory bank controller given by its header
  * 
  * @author Francois BURGUET 288683
  * @author Gaietan Renault 283350
  */
-public final class Cartridge implements Component {
+public final class Cartridge implements Component, Clocked, Stateful {
 
-	private final MBC1 mbc;
-	private final static int[] RAM_SIZE = { 0, 2048, 8192, 32768 };
+	private final MemoryBankController mbc;
+	private final String name;
+	private final SaveManager saves;
+	private final Path saveFile;
+	private final byte[] saveImage;
+	private long nextSaveCycle;
 
-	private Cartridge(MBC1 mbc1) {
-		this.mbc = mbc1;
+	private final static int CARTRIDGE_TYPE = 0x147;
+	private final static int RAM_SIZE_CODE = 0x149;
+	private final static int GLOBAL_CHECKSUM = 0x14E;
+	private final static int[] RAM_SIZE = { 0, 2048, 8192, 32768, 131072, 65536 };
+
+	private Cartridge(MemoryBankController mbc, String name, SaveManager saves, Path saveFile) {
+		this.mbc = mbc;
+		this.name = name;
+		this.saves = saves;
+		this.saveFile = saveFile;
+		this.saveImage = mbc.isRamMapped() || saves == null ? null : new byte[mbc.ramSize()];
+
+		if (mbc.ramSize() == 0 || saves == null) {
+			nextSaveCycle = Long.MAX_VALUE;
+		} else {
+			if (saveImage != null)
+				mbc.loadRam(saves, saveFile, saveImage);
+			nextSaveCycle = saves.interval();
+		}
 	}
 
 	/**
-	 * Creates a cartridge from the specified ROM file. Must be of type 0.
+	 * Creates a cartridge from the specified ROM file. Its type must be ROM only,
+	 * ROM+RAM, MBC1, MBC2, MBC3 or MBC5. Its RAM is saved by the default save
+	 * manager.
 	 * 
 	 * @param romFile : a ROM file
 	 * @return a cartridge : a cartrige usable by the GameBoy
 	 * @throws IOException if a problem is encountered during the reading
-	 * @throws IllegalArgumentException if the ROM is not of type 0
+	 * @throws IllegalArgumentException if the type or RAM size of the ROM is not supported
 	 */
 	public static Cartridge ofFile(File romFile) throws IOException {
+		return ofFile(romFile, SaveManager.defaultManager());
+	}
+
+	/**
+	 * Creates a cartridge from the specified ROM file, whose RAM is saved by the
+	 * specified save manager
+	 * 
+	 * @param romFile : a ROM file
+	 * @param saves : the save manager, or null for a blank RAM that is never
+	 *            saved
+	 * @return a cartridge : a cartrige usable by the GameBoy
+	 * @throws IOException if a problem is encountered during the reading
+	 * @throws IllegalArgumentException if the type or RAM size of the ROM is not supported
+	 */
+	public static Cartridge ofFile(File romFile, SaveManager saves) throws IOException {
 		String cartridgeName = romFile.getName();
-		byte[] data = Files.readAllBytes(romFile.toPath());
-		return new Cartridge(new MBC1(new Rom(data), RAM_SIZE[data[0x149]], cartridgeName));
+		Rom rom = RomRegistry.ofFile(romFile);
+		int ramSizeCode = rom.read(RAM_SIZE_CODE);
+		Preconditions.checkArgument(ramSizeCode < RAM_SIZE.length);
+		int ramSize = switch (rom.read(CARTRIDGE_TYPE)) {
+			case 0x00 -> 0;
+			case 0x05, 0x06 -> MBC2.RAM_SIZE;
+			default -> RAM_SIZE[ramSizeCode];
+		};
+		if (saves == null)
+			return new Cartridge(controller(rom, new Ram(ramSize), cartridgeName), cartridgeName, null, null);
+		Path saveFile = saves.saveFile(cartridgeName);
+		Ram ram = saves.ram(saveFile, ramSize);
+		return new Cartridge(controller(rom, ram, cartridgeName), cartridgeName, saves, saveFile);
+	}
+
+	/**
+	 * Creates a copy of this cartridge, sharing its ROM, with a RAM of its own
+	 * that is never saved. The state of the copy is the state of a cartridge
+	 * just plugged in.
+	 *
+	 * @return a new cartridge running the same game
+	 */
+	public Cartridge fork() {
+		return new Cartridge(controller(mbc.rom, new Ram(mbc.ramSize()), name), name, null, null);
+	}
+
+	/**
+	 * Creates a copy of this cartridge in its current state, sharing its ROM.
+	 * The RAM of the copy shares the pages of this RAM until either cartridge
+	 * writes them, unless this RAM is mapped over its save file, in which case
+	 * it is copied. The RAM of the copy is never saved.
+	 *
+	 * @return a new cartridge in the state of this one
+	 */
+	public Cartridge forkWithState() {
+		Cartridge fork = new Cartridge(controller(mbc.rom, mbc.ram.copy(), name), name, null, null);
+		mbc.copyRegisters(fork.mbc);
+		return fork;
+	}
+
+	private static MemoryBankController controller(Rom rom, Ram ram, String cartridgeName) {
+		return switch (rom.read(CARTRIDGE_TYPE)) {
+			case 0x00 -> new MBC0(rom, cartridgeName);
+			case 0x08, 0x09 -> new MBC0(rom, ram, cartridgeName);
+			case 0x01, 0x02, 0x03 -> new MBC1(rom, ram);
+			case 0x05, 0x06 -> new MBC2(rom, ram);
+			case 0x0F, 0x10 -> new MBC3(rom, ram, true);
+			case 0x11, 0x12, 0x13 -> new MBC3(rom, ram, false);
+			case 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E -> new MBC5(rom, ram);
+			default -> throw new IllegalArgumentException();
+		};
+	}
+
+	@Override
+	public void cycle(long cycle) {
+		mbc.cycle(cycle);
+		if (cycle >= nextSaveCycle) {
+			nextSaveCycle = cycle + saves.interval();
+			saveGame();
+		}
 	}
 
 	@Override
 	public int read(int address) {
-		checkBits16(address);
-		return mbc.read(address);
+		return mbc.readUnchecked(checkBits16(address));
 	}
 
 	@Override
 	public void write(int address, int data) {
-		mbc.write(checkBits16(address), checkBits8(data));
+		mbc.writeUnchecked(checkBits16(address), checkBits8(data));
 	}
+
+	@Override
+	public int readUnchecked(int address) {
+		return mbc.readUnchecked(address);
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		mbc.writeUnchecked(address, data);
+	}
+
+	/**
+	 * Returns the size of the cartridge ROM
+	 *
+	 * @return the size of the ROM, in bytes
+	 */
+	public int romSize() {
+		return mbc.rom.size();
+	}
+
+	/**
+	 * Returns the global checksum of the ROM, stored in its header
+	 *
+	 * @return the checksum, 16 bits value
+	 */
+	public int globalChecksum() {
+		return mbc.rom.read(GLOBAL_CHECKSUM) << 8 | mbc.rom.read(GLOBAL_CHECKSUM + 1);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		mbc.saveState(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		mbc.loadState(buffer);
+	}
+
+	/**
+	 * Saves the cartridge RAM, if it was modified since the last save. Only the
+	 * modified pages are copied on the calling thread, the file is written in
+	 * the background by the save manager. A RAM mapped over its save file is
+	 * only forced to the disk. The RAM of a forked cartridge is never saved.
+	 */
 	public void saveGame() {
-		mbc.save();
+		if (saves == null)
+			return;
+		if (saveImage == null)
+			mbc.forceDirtyPages(saves);
+		else if (mbc.copyDirtyPages(saveImage))
+			saves.write(saveFile, saveImage.clone());
 	}
 
 }
@@ -1,18 +1,18 @@
 package gameboj.component.cartridge;
 
 import gameboj.Preconditions;
-import gameboj.component.Component;
+import gameboj.component.memory.Ram;
 import gameboj.component.memory.Rom;
 
 /**
- * Represents a Memory Boot Controller of type 0
+ * Represents a Memory Boot Controller of type 0, without bank switching. The
+ * cartridges of type ROM+RAM have a RAM always mapped at 0xA000.
  * 
  * @author Francois BURGUET 288683
  * @author Gaietan Renault 283350
  */
-public final class MBC0 implements Component {
+public final class MBC0 extends MemoryBankController {
 
-	private final Rom rom;
 	private final String romName;
 
 	/**
@@ -26,33 +26,40 @@ public final class MBC0 implements Component {
 	}
 
 	public MBC0(Rom rom, String romName) {
-		if (rom == null) {
-			throw new NullPointerException();
-		}
+		this(rom, new Ram(0), romName);
+	}
+
+	/**
+	 * Initializes a MBC of type 0 with a RAM, for the cartridges of type
+	 * ROM+RAM
+	 * 
+	 * @param rom : a ROM of 32 KB
+	 * @param ram : the RAM of the cartridge, empty if it has none
+	 * @param romName : the name of the cartridge
+	 * @throws NullPointerException if the ROM or the RAM is null
+	 * @throws IllegalArgumentException if the ROM is not 32 KB
+	 */
+	public MBC0(Rom rom, Ram ram, String romName) {
+		super(rom, ram);
 		Preconditions.checkArgument(rom.size() == 0x8000);
-		this.rom = rom;
 		this.romName = romName;
 	}
 
 	/**
-	 * Reads the data at the specified address in the MBC0 if the address is smaller
-	 * than 0xFF
-	 * 
-	 * @param address : address to read at, 16 bits value
-	 * @return the data, 8 bit value
-	 * @throws IllegalArgumentException if the address is not a 16 bit value
+	 * Reads the RAM, if the cartridge has one
 	 */
 	@Override
-	public int read(int address) {
-		Preconditions.checkBits16(address);
-		return 0 <= address && address < 0x8000 ? rom.read(address) : NO_DATA;
+	int readRam(int address) {
+		return ramSize() == 0 ? NO_DATA : readRamBank(address);
 	}
 
 	/**
-	 * Does nothing
+	 * Writes in the RAM, the only writable area, if the cartridge has one
 	 */
 	@Override
-	public void write(int address, int data) {
+	public void writeUnchecked(int address, int data) {
+		if (address >>> 13 == 5)
+			writeRamBank(address, data);
 	}
 
 	public String getName() {
@@ -0,0 +1,63 @@
+package gameboj.component.cartridge;
+
+import gameboj.Preconditions;
+import gameboj.bits.Bits;
+import gameboj.component.memory.Ram;
+import gameboj.component.memory.Rom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a Memory Bank Controller of type 2, with up to 16 ROM banks and
+ * a built-in RAM of 512 4-bit values
+ *
+ * @author Francois BURGUET
+ */
+public final class MBC2 extends MemoryBankController {
+	private static final int RAM_ENABLE = 0xA;
+	static final int RAM_SIZE = 512;
+
+	private boolean ramEnabled;
+
+	public MBC2(Rom rom) {
+		this(rom, new Ram(RAM_SIZE));
+	}
+
+	public MBC2(Rom rom, Ram ram) {
+		super(rom, ram);
+		Preconditions.checkArgument(ram.size() == RAM_SIZE);
+	}
+
+	@Override
+	int readRam(int address) {
+		return ramEnabled ? 0xF0 | ram.read(address & (RAM_SIZE - 1)) : 0xFF;
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		switch (Bits.extract(address, 13, 3)) {
+			case 0, 1 -> {
+				if (Bits.test(address, 8))
+					selectRomBanks(0, Math.max(1, Bits.clip(4, data)));
+				else
+					ramEnabled = Bits.clip(4, data) == RAM_ENABLE;
+			}
+			case 5 -> {
+				if (ramEnabled)
+					writeRam(address & (RAM_SIZE - 1), Bits.clip(4, data));
+			}
+		}
+	}
+
+	@Override
+	void saveRegisters(ByteBuffer buffer) {
+		super.saveRegisters(buffer);
+		buffer.put((byte) (ramEnabled ? 1 : 0));
+	}
+
+	@Override
+	void loadRegisters(ByteBuffer buffer) {
+		super.loadRegisters(buffer);
+		ramEnabled = buffer.get() != 0;
+	}
+}
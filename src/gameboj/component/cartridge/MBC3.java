@@ -0,0 +1,177 @@
+package gameboj.component.cartridge;
+
+import gameboj.GameBoy;
+import gameboj.bits.Bits;
+import gameboj.component.memory.Ram;
+import gameboj.component.memory.Rom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a Memory Bank Controller of type 3, with up to 128 ROM banks,
+ * 4 RAM banks and optionally a real time clock. The clock counts emulated
+ * cycles, not wall time, so that it runs at the speed of the emulation.
+ *
+ * @author Francois BURGUET
+ */
+public final class MBC3 extends MemoryBankController {
+	private static final int RAM_ENABLE = 0xA;
+	private static final long CYCLES_PER_SECOND = GameBoy.CLOCK_FREQ / 4;
+	private static final int RTC_SELECT_START = 0x08, RTC_SELECT_END = 0x0D;
+	private static final int DAYS = 512;
+
+	private enum Rtc {
+		S, M, H, DL, DH
+	}
+
+	private final boolean hasTimer;
+	private final int[] latched = new int[Rtc.values().length];
+
+	private boolean ramEnabled;
+	private int ramBank;
+	private int latch = 0xFF;
+
+	private long cycle;
+	private long rtcCycle;
+	private long subSecondCycles;
+	private int seconds, minutes, hours, days;
+	private boolean halted, dayCarry;
+
+	public MBC3(Rom rom, int ramSize, boolean hasTimer) {
+		this(rom, new Ram(ramSize), hasTimer);
+	}
+
+	public MBC3(Rom rom, Ram ram, boolean hasTimer) {
+		super(rom, ram);
+		this.hasTimer = hasTimer;
+	}
+
+	@Override
+	public void cycle(long cycle) {
+		this.cycle = cycle;
+	}
+
+	@Override
+	int readRam(int address) {
+		if (!ramEnabled)
+			return 0xFF;
+		if (ramBank < RTC_SELECT_START)
+			return readRamBank(address);
+		if (hasTimer && ramBank < RTC_SELECT_END)
+			return latched[ramBank - RTC_SELECT_START];
+		return 0xFF;
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		switch (Bits.extract(address, 13, 3)) {
+			case 0 -> ramEnabled = Bits.clip(4, data) == RAM_ENABLE;
+			case 1 -> selectRomBanks(0, Math.max(1, Bits.clip(7, data)));
+			case 2 -> {
+				ramBank = data;
+				if (ramBank < RTC_SELECT_START)
+					selectRamBank(Bits.clip(2, ramBank));
+			}
+			case 3 -> {
+				if (hasTimer && latch == 0 && data == 1)
+					latchRtc();
+				latch = data;
+			}
+			case 5 -> {
+				if (!ramEnabled)
+					return;
+				if (ramBank < RTC_SELECT_START)
+					writeRamBank(address, data);
+				else if (hasTimer && ramBank < RTC_SELECT_END)
+					writeRtc(Rtc.values()[ramBank - RTC_SELECT_START], data);
+			}
+		}
+	}
+
+	private void latchRtc() {
+		updateRtc();
+		latched[Rtc.S.ordinal()] = seconds;
+		latched[Rtc.M.ordinal()] = minutes;
+		latched[Rtc.H.ordinal()] = hours;
+		latched[Rtc.DL.ordinal()] = Bits.clip(8, days);
+		latched[Rtc.DH.ordinal()] = (days >> 8) | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0);
+	}
+
+	private void writeRtc(Rtc reg, int data) {
+		updateRtc();
+		switch (reg) {
+			case S -> {
+				seconds = Bits.clip(6, data);
+				subSecondCycles = 0;
+			}
+			case M -> minutes = Bits.clip(6, data);
+			case H -> hours = Bits.clip(5, data);
+			case DL -> days = (days & 0x100) | data;
+			case DH -> {
+				days = (Bits.clip(1, data) << 8) | Bits.clip(8, days);
+				halted = Bits.test(data, 6);
+				dayCarry = Bits.test(data, 7);
+			}
+		}
+	}
+
+	/**
+	 * Advances the clock by the cycles elapsed since its last update, and
+	 * never backwards, in case an older state of the GameBoy was restored
+	 */
+	private void updateRtc() {
+		long elapsed = Math.max(0, cycle - rtcCycle);
+		rtcCycle = cycle;
+		if (halted)
+			return;
+
+		subSecondCycles += elapsed;
+		long total = seconds + subSecondCycles / CYCLES_PER_SECOND;
+		subSecondCycles %= CYCLES_PER_SECOND;
+
+		seconds = (int) (total % 60);
+		total = minutes + total / 60;
+		minutes = (int) (total % 60);
+		total = hours + total / 60;
+		hours = (int) (total % 24);
+		total = days + total / 24;
+		if (total >= DAYS)
+			dayCarry = true;
+		days = (int) (total % DAYS);
+	}
+
+	/**
+	 * Saves the banks, the latched and running clock registers, and the cycles
+	 * the clock is based on
+	 */
+	@Override
+	void saveRegisters(ByteBuffer buffer) {
+		super.saveRegisters(buffer);
+		for (int value : latched)
+			buffer.put((byte) value);
+		buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) ramBank).put((byte) latch);
+		buffer.putLong(cycle).putLong(rtcCycle).putLong(subSecondCycles);
+		buffer.put((byte) seconds).put((byte) minutes).put((byte) hours).putShort((short) days);
+		buffer.put((byte) ((halted ? 1 : 0) | (dayCarry ? 2 : 0)));
+	}
+
+	@Override
+	void loadRegisters(ByteBuffer buffer) {
+		super.loadRegisters(buffer);
+		for (int i = 0; i < latched.length; ++i)
+			latched[i] = Byte.toUnsignedInt(buffer.get());
+		ramEnabled = buffer.get() != 0;
+		ramBank = Byte.toUnsignedInt(buffer.get());
+		latch = Byte.toUnsignedInt(buffer.get());
+		cycle = buffer.getLong();
+		rtcCycle = buffer.getLong();
+		subSecondCycles = buffer.getLong();
+		seconds = buffer.get();
+		minutes = buffer.get();
+		hours = buffer.get();
+		days = buffer.getShort();
+		int flags = buffer.get();
+		halted = Bits.test(flags, 0);
+		dayCarry = Bits.test(flags, 1);
+	}
+}
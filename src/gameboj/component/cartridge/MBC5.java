@@ -0,0 +1,67 @@
+package gameboj.component.cartridge;
+
+import gameboj.bits.Bits;
+import gameboj.component.memory.Ram;
+import gameboj.component.memory.Rom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a Memory Bank Controller of type 5, with up to 512 ROM banks and
+ * 16 RAM banks
+ *
+ * @author Francois BURGUET
+ */
+public final class MBC5 extends MemoryBankController {
+	private static final int RAM_ENABLE = 0xA;
+
+	private boolean ramEnabled;
+	private int romBank = 1;
+
+	public MBC5(Rom rom, int ramSize) {
+		super(rom, ramSize);
+	}
+
+	public MBC5(Rom rom, Ram ram) {
+		super(rom, ram);
+	}
+
+	@Override
+	int readRam(int address) {
+		return ramEnabled ? readRamBank(address) : 0xFF;
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		switch (Bits.extract(address, 12, 4)) {
+			case 0, 1 -> ramEnabled = Bits.clip(4, data) == RAM_ENABLE;
+			case 2 -> {
+				romBank = (romBank & 0x100) | data;
+				selectRomBanks(0, romBank);
+			}
+			case 3 -> {
+				romBank = (Bits.clip(1, data) << 8) | Bits.clip(8, romBank);
+				selectRomBanks(0, romBank);
+			}
+			case 4, 5 -> selectRamBank(Bits.clip(4, data));
+			case 0xA, 0xB -> {
+				if (ramEnabled)
+					writeRamBank(address, data);
+			}
+		}
+	}
+
+	@Override
+	void saveRegisters(ByteBuffer buffer) {
+		super.saveRegisters(buffer);
+		buffer.put((byte) (ramEnabled ? 1 : 0));
+		buffer.putShort((short) romBank);
+	}
+
+	@Override
+	void loadRegisters(ByteBuffer buffer) {
+		super.loadRegisters(buffer);
+		ramEnabled = buffer.get() != 0;
+		romBank = Short.toUnsignedInt(buffer.getShort());
+	}
+}
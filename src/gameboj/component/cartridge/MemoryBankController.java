@@ -0,0 +1,304 @@
+package gameboj.component.cartridge;
+
+import gameboj.component.Clocked;
+import gameboj.component.Component;
+import gameboj.component.Stateful;
+import gameboj.component.memory.Ram;
+import gameboj.component.memory.Rom;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static gameboj.Preconditions.checkBits16;
+import static gameboj.Preconditions.checkBits8;
+
+/**
+ * Represents a Memory Bank Controller, mapping the banks of the cartridge ROM
+ * and RAM in the address space. The offsets of the selected banks are only
+ * computed when a bank register is written, an access then simply adds the
+ * offset of its bank to the address.
+ *
+ * @author Francois BURGUET
+ */
+public abstract class MemoryBankController implements Component, Clocked, Stateful {
+	static final int ROM_BANK_SIZE = 0x4000;
+	static final int RAM_BANK_SIZE = 0x2000;
+	private static final int PAGE_BITS = 8;
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int MAX_REGISTERS_SIZE = 0x40;
+
+	protected final Rom rom;
+	protected final Ram ram;
+
+	private final int romMask;
+	private final int ramMask;
+	private final long[] dirtyPages;
+
+	private int romBank0Offset;
+	private int romBankOffset;
+	private int ramBankOffset;
+	private final int ramOffsetMask;
+
+	/**
+	 * Initializes the controller of a cartridge, with its RAM on the heap
+	 *
+	 * @param rom : the ROM of the cartridge, its size must be a power of two
+	 * @param ramSize : the size of the cartridge RAM
+	 * @throws NullPointerException if the ROM is null
+	 */
+	MemoryBankController(Rom rom, int ramSize) {
+		this(rom, new Ram(ramSize));
+	}
+
+	/**
+	 * Initializes the controller of a cartridge
+	 *
+	 * @param rom : the ROM of the cartridge, its size must be a power of two
+	 * @param ram : the RAM of the cartridge, on the heap or mapped over its
+	 *            save file, its size must be a power of two
+	 * @throws NullPointerException if the ROM or the RAM is null
+	 */
+	MemoryBankController(Rom rom, Ram ram) {
+		if (rom == null || ram == null) {
+			throw new NullPointerException();
+		}
+		this.rom = rom;
+		this.ram = ram;
+		int ramSize = ram.size();
+
+		this.romMask = rom.size() - 1;
+		this.ramMask = ramSize - 1;
+		this.ramOffsetMask = Math.min(ramSize, RAM_BANK_SIZE) - 1;
+		this.dirtyPages = new long[(ramSize / PAGE_SIZE + Long.SIZE - 1) / Long.SIZE];
+		selectRomBanks(0, 1);
+	}
+
+	@Override
+	public final int read(int address) {
+		return readUnchecked(checkBits16(address));
+	}
+
+	@Override
+	public final void write(int address, int data) {
+		writeUnchecked(checkBits16(address), checkBits8(data));
+	}
+
+	@Override
+	public final int readUnchecked(int address) {
+		return switch (address >>> 13) {
+			case 0, 1 -> rom.read(romBank0Offset + address);
+			case 2, 3 -> rom.read(romBankOffset + (address & (ROM_BANK_SIZE - 1)));
+			case 5 -> readRam(address);
+			default -> NO_DATA;
+		};
+	}
+
+	/**
+	 * Does nothing, only cartridges with a clock need to be cycled
+	 */
+	@Override
+	public void cycle(long cycle) {
+	}
+
+	/**
+	 * Saves the registers of the controller, then the cartridge RAM
+	 */
+	@Override
+	public final void saveState(ByteBuffer buffer) {
+		saveRegisters(buffer);
+		ram.saveState(buffer);
+	}
+
+	/**
+	 * Loads the registers of the controller, then the cartridge RAM, whose
+	 * pages are all marked as modified so that the next save writes the
+	 * loaded RAM
+	 */
+	@Override
+	public final void loadState(ByteBuffer buffer) {
+		loadRegisters(buffer);
+		ram.loadState(buffer);
+		markAllPagesDirty();
+	}
+
+	/**
+	 * Copies the registers of this controller in the target, whose RAM is
+	 * marked as modified
+	 *
+	 * @param target : a controller of the same type, for the same ROM
+	 */
+	final void copyRegisters(MemoryBankController target) {
+		ByteBuffer registers = ByteBuffer.allocate(MAX_REGISTERS_SIZE);
+		saveRegisters(registers);
+		target.loadRegisters(registers.flip());
+		target.markAllPagesDirty();
+	}
+
+	/**
+	 * Saves the selected banks, the controllers append the state of their
+	 * registers
+	 *
+	 * @param buffer : the buffer to write to
+	 */
+	void saveRegisters(ByteBuffer buffer) {
+		buffer.putInt(romBank0Offset).putInt(romBankOffset).putInt(ramBankOffset);
+	}
+
+	/**
+	 * Loads the registers saved by <code>saveRegisters</code>
+	 *
+	 * @param buffer : the buffer to read from
+	 */
+	void loadRegisters(ByteBuffer buffer) {
+		romBank0Offset = buffer.getInt();
+		romBankOffset = buffer.getInt();
+		ramBankOffset = buffer.getInt();
+	}
+
+	private void markAllPagesDirty() {
+		for (int page = 0; page < ram.size() / PAGE_SIZE; ++page)
+			dirtyPages[page / Long.SIZE] |= 1L << page;
+	}
+
+	/**
+	 * Writes in the registers or the RAM of the controller, once the address
+	 * and the data were validated
+	 *
+	 * @param address : address to write at, 16 bits value
+	 * @param data : the data to write, 8 bit value
+	 */
+	@Override
+	public abstract void writeUnchecked(int address, int data);
+
+	/**
+	 * Reads the cartridge RAM area, between 0xA000 and 0xBFFF
+	 *
+	 * @param address : address to read at
+	 * @return the data, 8 bit value
+	 */
+	abstract int readRam(int address);
+
+	/**
+	 * Maps the specified ROM banks at 0x0000 and 0x4000
+	 *
+	 * @param bank0 : number of the bank mapped between 0x0000 and 0x3FFF
+	 * @param bank : number of the bank mapped between 0x4000 and 0x7FFF
+	 */
+	final void selectRomBanks(int bank0, int bank) {
+		romBank0Offset = (bank0 * ROM_BANK_SIZE) & romMask;
+		romBankOffset = (bank * ROM_BANK_SIZE) & romMask;
+	}
+
+	/**
+	 * Maps the specified RAM bank at 0xA000
+	 *
+	 * @param bank : number of the bank
+	 */
+	final void selectRamBank(int bank) {
+		ramBankOffset = (bank * RAM_BANK_SIZE) & ramMask;
+	}
+
+	/**
+	 * Reads the selected RAM bank
+	 *
+	 * @param address : address between 0xA000 and 0xBFFF
+	 * @return the data, or 0xFF if the cartridge has no RAM
+	 */
+	final int readRamBank(int address) {
+		return ram.size() == 0 ? 0xFF : ram.read(ramBankOffset + (address & ramOffsetMask));
+	}
+
+	/**
+	 * Writes in the selected RAM bank, if the cartridge has RAM
+	 *
+	 * @param address : address between 0xA000 and 0xBFFF
+	 * @param data : the data to write, 8 bit value
+	 */
+	final void writeRamBank(int address, int data) {
+		if (ram.size() != 0)
+			writeRam(ramBankOffset + (address & ramOffsetMask), data);
+	}
+
+	/**
+	 * Writes in the cartridge RAM, marking the page as modified
+	 *
+	 * @param index : index in the RAM
+	 * @param data : the data to write, 8 bit value
+	 */
+	final void writeRam(int index, int data) {
+		ram.writeUnchecked(index, data);
+		dirtyPages[index >>> (PAGE_BITS + 6)] |= 1L << (index >>> PAGE_BITS);
+	}
+
+	/**
+	 * Returns the size of the cartridge RAM
+	 *
+	 * @return the size of the RAM
+	 */
+	final int ramSize() {
+		return ram.size();
+	}
+
+	/**
+	 * Returns true if the RAM is mapped over its save file, and thus needs no
+	 * explicit save
+	 *
+	 * @return true if the RAM is mapped
+	 */
+	final boolean isRamMapped() {
+		return ram.isMapped();
+	}
+
+	/**
+	 * Loads the RAM from its save file
+	 *
+	 * @param saves : the save manager
+	 * @param file : the save file
+	 * @param image : array receiving a copy of the loaded RAM
+	 */
+	final void loadRam(SaveManager saves, Path file, byte[] image) {
+		saves.load(file, ram);
+		ram.read(0, image, 0, ram.size());
+	}
+
+	/**
+	 * Copies the pages of the RAM modified since the last call in the image
+	 *
+	 * @param image : the image of the whole RAM to update
+	 * @return true if at least one page was copied
+	 */
+	final boolean copyDirtyPages(byte[] image) {
+		return copyDirtyPages(image, false);
+	}
+
+	/**
+	 * Writes the pages of the RAM modified since the last call to the storage
+	 * device, for a RAM mapped over its save file. Must be called on the
+	 * emulation thread, the writing itself is done by the save manager.
+	 *
+	 * @param saves : the save manager
+	 * @return true if at least one page was modified
+	 */
+	final boolean forceDirtyPages(SaveManager saves) {
+		if (!copyDirtyPages(null, true))
+			return false;
+		saves.force(ram);
+		return true;
+	}
+
+	private boolean copyDirtyPages(byte[] image, boolean clearOnly) {
+		boolean copied = false;
+		for (int i = 0; i < dirtyPages.length; ++i) {
+			long pages = dirtyPages[i];
+			dirtyPages[i] = 0;
+			while (pages != 0) {
+				int page = i * Long.SIZE + Long.numberOfTrailingZeros(pages);
+				if (!clearOnly)
+					ram.read(page * PAGE_SIZE, image, page * PAGE_SIZE, PAGE_SIZE);
+				pages &= pages - 1;
+				copied = true;
+			}
+		}
+		return copied;
+	}
+}
@@ -0,0 +1,308 @@
+package gameboj.component.cartridge;
+
+import gameboj.GameBoy;
+import gameboj.Preconditions;
+import gameboj.component.memory.Ram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes the battery saves of cartridges in the background. Each save is
+ * written to a temporary file, forced to the disk and then atomically moved
+ * over the previous save, so that a crash never leaves a partial save.
+ * Cartridges hand over snapshots of their RAM every <code>interval</code>
+ * emulated cycles, and when the game is explicitly saved.
+ * <p>
+ * A mapped save manager instead maps the save files in the cartridge RAMs:
+ * every write of the game lands in the page cache, and saving only forces
+ * the modified file to the disk.
+ *
+ * @author Francois BURGUET
+ */
+public final class SaveManager implements Closeable {
+
+	/**
+	 * Default interval between two automatic saves: 10 seconds of emulated time
+	 */
+	public static final long DEFAULT_INTERVAL = 10 * GameBoy.CLOCK_FREQ / 4;
+
+	private static SaveManager defaultManager;
+
+	private final Path directory;
+	private final long interval;
+	private final boolean mapped;
+	private final ExecutorService writer;
+
+	private final AtomicLong pendingSaves = new AtomicLong();
+	private final AtomicLong savesWritten = new AtomicLong();
+	private final AtomicLong savesFailed = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+
+	/**
+	 * Creates a save manager writing in the specified directory
+	 *
+	 * @param directory : directory of the save files, created when needed
+	 * @param interval : number of cycles between two automatic saves, or 0 to
+	 *            only save explicitly
+	 * @throws NullPointerException if the directory is null
+	 * @throws IllegalArgumentException if the interval is negative
+	 */
+	public SaveManager(Path directory, long interval) {
+		this(directory, interval, false);
+	}
+
+	/**
+	 * Creates a save manager writing in the specified directory
+	 *
+	 * @param directory : directory of the save files, created when needed
+	 * @param interval : number of cycles between two automatic saves, or 0 to
+	 *            only save explicitly
+	 * @param mapped : true to map the save files in the cartridge RAMs
+	 * @throws NullPointerException if the directory is null
+	 * @throws IllegalArgumentException if the interval is negative
+	 */
+	public SaveManager(Path directory, long interval, boolean mapped) {
+		if (directory == null) {
+			throw new NullPointerException();
+		}
+		Preconditions.checkArgument(interval >= 0);
+		this.directory = directory;
+		this.interval = interval == 0 ? Long.MAX_VALUE : interval;
+		this.mapped = mapped;
+		this.writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "save-writer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Returns the manager writing in the <code>saves</code> directory, which
+	 * waits for its pending saves when the JVM shuts down
+	 *
+	 * @return the default save manager
+	 */
+	public static synchronized SaveManager defaultManager() {
+		if (defaultManager == null) {
+			defaultManager = new SaveManager(Path.of("saves"), DEFAULT_INTERVAL);
+			Runtime.getRuntime().addShutdownHook(new Thread(defaultManager::close));
+		}
+		return defaultManager;
+	}
+
+	/**
+	 * Returns the number of cycles between two automatic saves
+	 *
+	 * @return the interval, Long.MAX_VALUE if automatic saves are disabled
+	 */
+	public long interval() {
+		return interval;
+	}
+
+	/**
+	 * Returns the save file of the specified ROM
+	 *
+	 * @param romName : name of the ROM file
+	 * @return the path of the save file
+	 */
+	Path saveFile(String romName) {
+		int extension = romName.lastIndexOf('.');
+		String name = extension > 0 ? romName.substring(0, extension) : romName;
+		return directory.resolve(name + ".sav");
+	}
+
+	/**
+	 * Creates the RAM of a cartridge, mapped over its save file if this manager
+	 * is mapped and the file can be mapped, on the heap otherwise
+	 *
+	 * @param file : the save file
+	 * @param size : the size of the RAM
+	 * @return the RAM of the cartridge
+	 */
+	Ram ram(Path file, int size) {
+		if (mapped && size != 0) {
+			try {
+				Files.createDirectories(file.toAbsolutePath().getParent());
+				return Ram.ofFile(file.toFile(), size);
+			} catch (IOException | IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+		}
+		return new Ram(size);
+	}
+
+	/**
+	 * Loads the specified save file in the RAM, if it exists. A save whose
+	 * size is not the size of the RAM is not loaded, and is copied aside with
+	 * the <code>.rejected</code> extension before the next save overwrites
+	 * it: the RAM stays blank.
+	 *
+	 * @param file : the save file
+	 * @param ram : the RAM to load
+	 */
+	void load(Path file, Ram ram) {
+		try {
+			byte[] save = Files.readAllBytes(file);
+			if (save.length != ram.size()) {
+				System.err.println("ignoring save " + file + " of " + save.length + " bytes, expected " + ram.size());
+				Files.copy(file, file.resolveSibling(file.getFileName() + ".rejected"), REPLACE_EXISTING);
+				return;
+			}
+			ram.loadRam(save);
+		} catch (NoSuchFileException e) {
+			// do nothing
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Schedules the writing of a snapshot of the RAM in the save file
+	 *
+	 * @param file : the save file
+	 * @param image : the content to save, must not be modified afterwards
+	 */
+	void write(Path file, byte[] image) {
+		submit(() -> writeAtomically(file, image));
+	}
+
+	/**
+	 * Schedules the writing of a mapped RAM to its save file
+	 *
+	 * @param ram : the mapped RAM
+	 */
+	void force(Ram ram) {
+		submit(() -> {
+			long start = System.nanoTime();
+			try {
+				ram.force();
+				savesWritten.incrementAndGet();
+				bytesWritten.addAndGet(ram.size());
+			} catch (UncheckedIOException e) {
+				savesFailed.incrementAndGet();
+				e.printStackTrace();
+			} finally {
+				writeNanos.addAndGet(System.nanoTime() - start);
+			}
+		});
+	}
+
+	/**
+	 * Runs the save on the writer thread, or counts it as failed if the
+	 * manager was closed
+	 */
+	private void submit(Runnable save) {
+		pendingSaves.incrementAndGet();
+		try {
+			writer.execute(() -> {
+				try {
+					save.run();
+				} finally {
+					pendingSaves.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pendingSaves.decrementAndGet();
+			savesFailed.incrementAndGet();
+		}
+	}
+
+	private void writeAtomically(Path file, byte[] image) {
+		long start = System.nanoTime();
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(image);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(true);
+			}
+			Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+			savesWritten.incrementAndGet();
+			bytesWritten.addAndGet(image.length);
+		} catch (IOException e) {
+			savesFailed.incrementAndGet();
+			e.printStackTrace();
+		}
+		writeNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns the number of saves scheduled but not yet written
+	 *
+	 * @return the number of pending saves
+	 */
+	public long pendingSaves() {
+		return pendingSaves.get();
+	}
+
+	/**
+	 * Returns the number of saves successfully written
+	 *
+	 * @return the number of saves written
+	 */
+	public long savesWritten() {
+		return savesWritten.get();
+	}
+
+	/**
+	 * Returns the number of saves that could not be written
+	 *
+	 * @return the number of failed saves
+	 */
+	public long savesFailed() {
+		return savesFailed.get();
+	}
+
+	/**
+	 * Returns the number of bytes written in save files
+	 *
+	 * @return the number of bytes written
+	 */
+	public long bytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Returns the total time spent writing save files, in nanoseconds
+	 *
+	 * @return the time spent writing
+	 */
+	public long writeNanos() {
+		return writeNanos.get();
+	}
+
+	/**
+	 * Writes the pending saves and stops the writer thread. The saves
+	 * scheduled afterwards are counted as failed.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
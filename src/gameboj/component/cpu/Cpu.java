@@ -5,10 +5,12 @@ import gameboj.bits.Bit;
 import gameboj.bits.Bits;
 import gameboj.component.Clocked;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
 import gameboj.component.cpu.Alu.RotDir;
-import gameboj.component.memory.Ram;
+import gameboj.component.memory.MemoryArena;
+
+import java.nio.ByteBuffer;
 
-import static gameboj.AddressMap.HIGH_RAM_SIZE;
 import static gameboj.AddressMap.REGS_START;
 
 /**
@@ -18,7 +20,7 @@ import static gameboj.AddressMap.REGS_START;
  * @author Gaietan Renault 283350
  */
 
-public final class Cpu implements Component, Clocked {
+public final class Cpu implements Component, Clocked, Stateful {
 
     public enum Interrupt implements Bit {
         VBLANK, LCD_STAT, TIMER, SERIAL, JOYPAD
@@ -43,17 +45,31 @@ public final class Cpu implements Component, Clocked {
     private int IF = 0;
     private boolean IME = false;
 
-    private final Ram highRam = new Ram(HIGH_RAM_SIZE);
-
     private Bus bus;
 
-    private final RegisterFile<Reg> regFile = new RegisterFile<>(Reg.values());
+    private final RegisterFile<Reg> regFile;
 
     private long nextNonIdleCycle;
 
     private static final Opcode[] DIRECT_OPCODE_TABLE = buildOpcodeTable(Opcode.Kind.DIRECT);
     private static final Opcode[] PREFIXED_OPCODE_TABLE = buildOpcodeTable(Opcode.Kind.PREFIXED);
 
+    /**
+     * Creates the CPU, with its register file on the heap
+     */
+    public Cpu() {
+        this(MemoryArena.heap());
+    }
+
+    /**
+     * Creates the CPU, with its register file allocated in the arena
+     *
+     * @param arena : the arena holding the registers
+     */
+    public Cpu(MemoryArena arena) {
+        regFile = new RegisterFile<>(Reg.values(), arena);
+    }
+
     @Override
     public void cycle(long cycle) {
         int interrupt = IE & IF;
@@ -99,10 +115,12 @@ public final class Cpu implements Component, Clocked {
 
     @Override
     public int read(int address) {
-        Preconditions.checkBits16(address);
-        if (AddressMap.HIGH_RAM_START <= address && address < AddressMap.HIGH_RAM_END)
-            return highRam.read(address - AddressMap.HIGH_RAM_START);
-        else if (address == AddressMap.REG_IF)
+        return readUnchecked(Preconditions.checkBits16(address));
+    }
+
+    @Override
+    public int readUnchecked(int address) {
+        if (address == AddressMap.REG_IF)
             return IF;
         else if (address == AddressMap.REG_IE)
             return IE;
@@ -112,16 +130,36 @@ public final class Cpu implements Component, Clocked {
 
     @Override
     public void write(int address, int data) {
-        Preconditions.checkBits16(address);
-        Preconditions.checkBits8(data);
-        if (AddressMap.HIGH_RAM_START <= address && address < AddressMap.HIGH_RAM_END)
-            highRam.write(address - AddressMap.HIGH_RAM_START, data);
-        else if (address == AddressMap.REG_IF)
+        writeUnchecked(Preconditions.checkBits16(address), Preconditions.checkBits8(data));
+    }
+
+    @Override
+    public void writeUnchecked(int address, int data) {
+        if (address == AddressMap.REG_IF)
             IF = data;
         else if (address == AddressMap.REG_IE)
             IE = data;
     }
 
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putShort((short) SP).putShort((short) PC);
+        buffer.put((byte) IE).put((byte) IF).put((byte) (IME ? 1 : 0));
+        buffer.putLong(nextNonIdleCycle);
+        regFile.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        SP = Short.toUnsignedInt(buffer.getShort());
+        PC = Short.toUnsignedInt(buffer.getShort());
+        IE = Byte.toUnsignedInt(buffer.get());
+        IF = Byte.toUnsignedInt(buffer.get());
+        IME = buffer.get() != 0;
+        nextNonIdleCycle = buffer.getLong();
+        regFile.loadState(buffer);
+    }
+
     private void dispatch(Opcode opCode) {
 
         int nextPC = PC + opCode.totalBytes;
@@ -582,6 +620,7 @@ public final class Cpu implements Component, Clocked {
     @Override
     public void attachTo(Bus bus) {
         bus.attach(this);
+        bus.attachRegister(this, AddressMap.REG_IF, 0xE0);
         this.bus = bus;
     }
 
@@ -589,19 +628,19 @@ public final class Cpu implements Component, Clocked {
     // Bus access method
 
     private int read8(int address) {
-        return Bits.clip(8, bus.read(address));
+        return Bits.clip(8, bus.readUnchecked(address));
     }
 
     private int read8AtHl() {
-        return Bits.clip(8, bus.read(reg16(Reg16.HL)));
+        return Bits.clip(8, bus.readUnchecked(reg16(Reg16.HL)));
     }
 
     private int read8AfterOpcode() {
-        return Bits.clip(8, bus.read(Bits.clip(16, PC + 1)));
+        return Bits.clip(8, bus.readUnchecked(Bits.clip(16, PC + 1)));
     }
 
     private int read16(int address) {
-        return Bits.make16(bus.read(Bits.clip(16, address + 1)), bus.read(Bits.clip(16, address)));
+        return Bits.make16(bus.readUnchecked(Bits.clip(16, address + 1)), bus.readUnchecked(Bits.clip(16, address)));
     }
 
     private int read16AfterOpcode() {
@@ -609,16 +648,16 @@ public final class Cpu implements Component, Clocked {
     }
 
     private void write8(int address, int v) {
-        bus.write(address, v);
+        bus.writeUnchecked(address, v);
     }
 
     private void write16(int address, int v) {
-        bus.write(address, Bits.clip(8, v));
-        bus.write(Bits.clip(16, address + 1), Bits.extract(v, 8, 8));
+        bus.writeUnchecked(address, Bits.clip(8, v));
+        bus.writeUnchecked(Bits.clip(16, address + 1), Bits.extract(v, 8, 8));
     }
 
     private void write8AtHl(int v) {
-        bus.write(reg16(Reg16.HL), v);
+        bus.writeUnchecked(reg16(Reg16.HL), v);
     }
 
     private void push16(int v) {
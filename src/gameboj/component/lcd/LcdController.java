@@ -9,15 +9,18 @@ import gameboj.bits.BitVector;
 import gameboj.bits.Bits;
 import gameboj.component.Clocked;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
 import gameboj.component.cpu.Cpu;
 import gameboj.component.cpu.Cpu.Interrupt;
-import gameboj.component.memory.Ram;
+import gameboj.component.memory.MemoryArena;
+import gameboj.component.memory.MemoryMap;
 import gameboj.component.memory.RamController;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
-public final class LcdController implements Component, Clocked {
+public final class LcdController implements Component, Clocked, Stateful {
 
 	private Bus bus;
 	private final Cpu cpu;
@@ -31,6 +34,7 @@ public final class LcdController implements Component, Clocked {
 	private final BitVector transparentLine;
 	private boolean firstLineDrawn;
 	private int winY;
+	private boolean rendering = true;
 
 	public final static int LCD_WIDTH = 160;
 	public final static int LCD_HEIGHT = 144;
@@ -43,15 +47,10 @@ public final class LcdController implements Component, Clocked {
 	public static final int MODE3_CYCLES = 43;
 	public static final int MODE0_CYCLES = 51;
 
-	private final RamController VRAMController = new RamController(
-			new Ram(AddressMap.VIDEO_RAM_SIZE),
-			AddressMap.VIDEO_RAM_START,
-			AddressMap.VIDEO_RAM_END);
+	private final static LcdImage BLANK_IMAGE = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT).build();
 
-	private final RamController OAMController = new RamController(
-			new Ram(AddressMap.OAM_RAM_SIZE),
-			AddressMap.OAM_START,
-			AddressMap.OAM_END);
+	private final RamController VRAMController;
+	private final RamController OAMController;
 
 	private enum Reg implements Register {
 		LCDC, STAT, SCY, SCX, LY, LYC, DMA, BGP, OBP0, OBP1, WY, WX
@@ -69,23 +68,52 @@ public final class LcdController implements Component, Clocked {
 		BG, WIN, SPRITE
 	}
 
-	private final RegisterFile<Reg> regFile = new RegisterFile<>(Reg.values());
+	private final RegisterFile<Reg> regFile;
+
+	/**
+	 * Creates the LCD controller, displaying the video RAM and the OAM of the
+	 * memory map. The memory map serves them on the bus, the controller only
+	 * serves its registers.
+	 *
+	 * @param cpu : the CPU to interrupt, non-null
+	 * @param memory : the memory map, non-null
+	 * @throws NullPointerException if the CPU or the memory map is null
+	 */
+	public LcdController(Cpu cpu, MemoryMap memory) {
+		this(cpu, memory, MemoryArena.heap());
+	}
 
-	public LcdController(Cpu cpu) {
+	/**
+	 * Creates the LCD controller, with its registers allocated in the arena
+	 *
+	 * @param cpu : the CPU to interrupt, non-null
+	 * @param memory : the memory map, non-null
+	 * @param arena : the arena holding the registers
+	 * @throws NullPointerException if the CPU or the memory map is null
+	 */
+	public LcdController(Cpu cpu, MemoryMap memory, MemoryArena arena) {
 		this.cpu = Objects.requireNonNull(cpu);
+		this.regFile = new RegisterFile<>(Reg.values(), arena);
+		this.VRAMController = new RamController(memory.videoRam(),
+				AddressMap.VIDEO_RAM_START,
+				AddressMap.VIDEO_RAM_END);
+		this.OAMController = new RamController(memory.oam(),
+				AddressMap.OAM_START,
+				AddressMap.OAM_END);
 		transparentLine = new BitVector(LCD_WIDTH);
 	}
 
 	@Override
 	public void attachTo(Bus bus) {
 		this.bus = Objects.requireNonNull(bus);
-		bus.attach(this);
+		for (Reg reg : Reg.values())
+			bus.attachRegister(this, AddressMap.REGS_LCDC_START + reg.ordinal(), reg == Reg.STAT ? 0x80 : 0);
 	}
 
 	@Override
 	public void cycle(long cycle) {
 		if (copyDestination < AddressMap.OAM_END) {
-			OAMController.write(copyDestination, bus.read(copySource));
+			bus.writeUnchecked(copyDestination, bus.readUnchecked(copySource));
 			copyDestination++;
 			copySource++;
 		}
@@ -101,10 +129,6 @@ public final class LcdController implements Component, Clocked {
 	public int read(int address) {
 		if (inBounds(address, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END)) {
 			return regFile.get(Reg.values()[address - AddressMap.REGS_LCDC_START]);
-		} else if (inBounds(address, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END)) {
-			return VRAMController.read(address);
-		} else if (inBounds(address, AddressMap.OAM_START, AddressMap.OAM_END)) {
-			return OAMController.read(address);
 		}
 		return NO_DATA;
 	}
@@ -140,13 +164,74 @@ public final class LcdController implements Component, Clocked {
 					regFile.set(reg, data);
 				}
 			}
-		} else if (inBounds(address, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END)) {
-			VRAMController.write(address, data);
-		} else if (inBounds(address, AddressMap.OAM_START, AddressMap.OAM_END)) {
-			OAMController.write(address, data);
 		}
 	}
 
+	/**
+	 * Saves the registers, the progress of the DMA and of the current frame,
+	 * and the lines of both the last and the current frame, blank when
+	 * absent so that the size of the state is fixed
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(nextNonIdleCycle);
+		buffer.putShort((short) copySource).putShort((short) copyDestination);
+		buffer.put((byte) winY).put((byte) (firstLineDrawn ? 1 : 0));
+		regFile.saveState(buffer);
+
+		buffer.put((byte) ((lcdImage != null ? 1 : 0) | (lcdImageBuilder != null ? 2 : 0)));
+		(lcdImage != null ? lcdImage : BLANK_IMAGE).writeTo(buffer);
+		(lcdImageBuilder != null ? lcdImageBuilder.build() : BLANK_IMAGE).writeTo(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		nextNonIdleCycle = buffer.getLong();
+		copySource = Short.toUnsignedInt(buffer.getShort());
+		copyDestination = Short.toUnsignedInt(buffer.getShort());
+		winY = Byte.toUnsignedInt(buffer.get());
+		firstLineDrawn = buffer.get() != 0;
+		regFile.loadState(buffer);
+
+		int images = buffer.get();
+		LcdImage image = LcdImage.readFrom(buffer, LCD_WIDTH, LCD_HEIGHT);
+		LcdImage built = LcdImage.readFrom(buffer, LCD_WIDTH, LCD_HEIGHT);
+		lcdImage = Bits.test(images, 0) ? image : null;
+		lcdImageBuilder = Bits.test(images, 1) ? new LcdImage.Builder(built) : null;
+	}
+
+	/**
+	 * Puts the target in the state of this controller, like a save and load
+	 * of the state, but sharing the immutable lines of the images
+	 *
+	 * @param target : the LCD controller of another GameBoy
+	 */
+	public void shareWith(LcdController target) {
+		target.nextNonIdleCycle = nextNonIdleCycle;
+		target.copySource = copySource;
+		target.copyDestination = copyDestination;
+		target.winY = winY;
+		target.firstLineDrawn = firstLineDrawn;
+		ByteBuffer registers = ByteBuffer.allocate(Reg.values().length);
+		regFile.saveState(registers);
+		target.regFile.loadState(registers.flip());
+
+		target.lcdImage = lcdImage;
+		target.lcdImageBuilder = lcdImageBuilder == null ? null : new LcdImage.Builder(lcdImageBuilder.build());
+	}
+
+	/**
+	 * Enables or disables the drawing of the lines. While it is disabled, the
+	 * controller keeps its timing, registers and interrupts, but draws no line
+	 * and keeps the last image drawn. An image is only complete if the
+	 * drawing was enabled during its whole frame.
+	 *
+	 * @param rendering : true to draw the lines
+	 */
+	public void setRendering(boolean rendering) {
+		this.rendering = rendering;
+	}
+
 	public LcdImage currentImage() {
 		if (lcdImage == null)
 			return new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT).build();
@@ -159,7 +244,8 @@ public final class LcdController implements Component, Clocked {
 			tryLcdStatInterrupt(1);
 			cpu.requestInterrupt(Interrupt.VBLANK);
 			updateLYorLYC(Reg.LY, regFile.get(Reg.LY) + 1);
-			lcdImage = lcdImageBuilder.build();
+			if (rendering)
+				lcdImage = lcdImageBuilder.build();
 			firstLineDrawn = false;
 			nextNonIdleCycle += LINE_CYCLES;
 
@@ -183,9 +269,10 @@ public final class LcdController implements Component, Clocked {
 			if (!firstLineDrawn)
 				firstLineDrawn = true;
 
-			LcdImageLine currentLine = computeLine(regFile.get(Reg.LY));
-
-			lcdImageBuilder.setLine(regFile.get(Reg.LY), currentLine);
+			if (rendering) {
+				LcdImageLine currentLine = computeLine(regFile.get(Reg.LY));
+				lcdImageBuilder.setLine(regFile.get(Reg.LY), currentLine);
+			}
 			nextNonIdleCycle += MODE3_CYCLES;
 
 		} else if (checkModeSTAT(3)) {
@@ -258,10 +345,10 @@ public final class LcdController implements Component, Clocked {
 
 		for (int number : sprites) {
 			LcdImageLine.Builder singleSpriteLineBuilder = new LcdImageLine.Builder(LCD_WIDTH);
-			int spriteYLoc = OAMController.read(AddressMap.OAM_START + number * 4) - 16;
-			int spriteXLoc = OAMController.read(AddressMap.OAM_START + number * 4 + 1) - 8;
-			int spriteIndex = OAMController.read(AddressMap.OAM_START + number * 4 + 2);
-			int infoByte = OAMController.read(AddressMap.OAM_START + number * 4 + 3);
+			int spriteYLoc = OAMController.readUnchecked(AddressMap.OAM_START + number * 4) - 16;
+			int spriteXLoc = OAMController.readUnchecked(AddressMap.OAM_START + number * 4 + 1) - 8;
+			int spriteIndex = OAMController.readUnchecked(AddressMap.OAM_START + number * 4 + 2);
+			int infoByte = OAMController.readUnchecked(AddressMap.OAM_START + number * 4 + 3);
 			int spriteSize = regFile.testBit(Reg.LCDC, LCDCB.OBJ_SIZE) ? 16 : 8;
 			int spritePal = Bits.test(infoByte, 4) ? regFile.get(Reg.OBP1) : regFile.get(Reg.OBP0);
 
@@ -296,7 +383,7 @@ public final class LcdController implements Component, Clocked {
 		int indexStartAddress = regFile.testBit(Reg.LCDC, addressArea) ? AddressMap.BG_DISPLAY_DATA[1]
 				: AddressMap.BG_DISPLAY_DATA[0];
 
-		return VRAMController.read(indexStartAddress + tileNumber);
+		return VRAMController.readUnchecked(indexStartAddress + tileNumber);
 	}
 
 	private int[] getVectors(imageType type, int index, int row) {
@@ -307,8 +394,8 @@ public final class LcdController implements Component, Clocked {
 
 		int size = type != imageType.SPRITE || !regFile.testBit(Reg.LCDC, LCDCB.OBJ_SIZE) ? 8 : 16;
 
-		int lsb = Bits.reverse8(VRAMController.read(tileAddress + 2 * (row % size)));
-		int msb = Bits.reverse8(VRAMController.read(tileAddress + 2 * (row % size) + 1));
+		int lsb = Bits.reverse8(VRAMController.readUnchecked(tileAddress + 2 * (row % size)));
+		int msb = Bits.reverse8(VRAMController.readUnchecked(tileAddress + 2 * (row % size) + 1));
 
 		return new int[] { msb, lsb };
 	}
@@ -332,8 +419,8 @@ public final class LcdController implements Component, Clocked {
 		int count = 0;
 
 		while (count < 10 && spriteNumber < 40) {
-			int tileYLoc = OAMController.read(AddressMap.OAM_START + spriteNumber * 4) - 16;
-			int tileXLoc = OAMController.read(AddressMap.OAM_START + spriteNumber * 4 + 1) - 8;
+			int tileYLoc = OAMController.readUnchecked(AddressMap.OAM_START + spriteNumber * 4) - 16;
+			int tileXLoc = OAMController.readUnchecked(AddressMap.OAM_START + spriteNumber * 4 + 1) - 8;
 			int spriteSize = regFile.testBit(Reg.LCDC, LCDCB.OBJ_SIZE) ? 16 : 8;
 
 			if (inBounds(row, tileYLoc, tileYLoc + spriteSize)) {
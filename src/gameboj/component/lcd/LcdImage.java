@@ -1,10 +1,12 @@
 package gameboj.component.lcd;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
 import gameboj.Preconditions;
+import gameboj.bits.BitVector;
 
 public final class LcdImage {
 
@@ -74,6 +76,80 @@ public final class LcdImage {
 		return lines.equals(image.lines);
 	}
 
+	/**
+	 * Writes the shade of every pixel in the buffer, one byte between 0 and 3
+	 * per pixel, line by line
+	 *
+	 * @param buffer : the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void writeShades(ByteBuffer buffer) {
+		for (LcdImageLine line : lines) {
+			BitVector msb = line.msb();
+			BitVector lsb = line.lsb();
+			for (int x = 0; x < width; ++x)
+				buffer.put((byte) ((msb.testBit(x) ? 2 : 0) | (lsb.testBit(x) ? 1 : 0)));
+		}
+	}
+
+	/**
+	 * Writes the image downscaled, in grayscale, one byte per block of
+	 * <code>scale</code> by <code>scale</code> pixels, line by line: the mean
+	 * intensity of the block, from 0 for black to 255 for white
+	 *
+	 * @param buffer : the buffer to write to
+	 * @param scale : the side of the blocks, dividing the width and height
+	 * @throws IllegalArgumentException if the scale does not divide the
+	 *             dimensions of the image
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void writeGrayscale(ByteBuffer buffer, int scale) {
+		Preconditions.checkArgument(scale > 0 && width % scale == 0 && height % scale == 0);
+		int pixels = scale * scale;
+		for (int y = 0; y < height; y += scale) {
+			for (int x = 0; x < width; x += scale) {
+				int shades = 0;
+				for (int dy = 0; dy < scale; ++dy) {
+					LcdImageLine line = lines.get(y + dy);
+					BitVector msb = line.msb();
+					BitVector lsb = line.lsb();
+					for (int dx = 0; dx < scale; ++dx)
+						shades += (msb.testBit(x + dx) ? 2 : 0) + (lsb.testBit(x + dx) ? 1 : 0);
+				}
+				buffer.put((byte) (255 - shades * 85 / pixels));
+			}
+		}
+	}
+
+	/**
+	 * Writes the lines of the image in the buffer
+	 *
+	 * @param buffer : the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for (LcdImageLine line : lines)
+			line.writeTo(buffer);
+	}
+
+	/**
+	 * Reads an image written by <code>writeTo</code>
+	 *
+	 * @param buffer : the buffer to read from
+	 * @param width : the width of the image
+	 * @param height : the height of the image
+	 * @return the image read
+	 * @throws IllegalArgumentException if one of the dimensions is invalid
+	 * @throws java.nio.BufferUnderflowException if the buffer is too small
+	 */
+	public static LcdImage readFrom(ByteBuffer buffer, int width, int height) {
+		Preconditions.checkArgument(height > 0);
+		List<LcdImageLine> lines = new ArrayList<>(height);
+		for (int i = 0; i < height; i++)
+			lines.add(LcdImageLine.readFrom(buffer, width));
+		return new LcdImage(width, height, lines);
+	}
+
 	/**
 	 * Builder of the class LcdImage Allows building the imgae line by line
 	 */
@@ -103,6 +179,17 @@ public final class LcdImage {
 			this(width, height, width, height);
 		}
 
+		/**
+		 * Creates a builder whose lines are initially the lines of the image
+		 *
+		 * @param image : the image to start from
+		 */
+		public Builder(LcdImage image) {
+			this.width = image.width;
+			this.height = image.height;
+			this.lines = new ArrayList<>(image.lines);
+		}
+
 		/**
 		 * Sets the line at the specified index to the line given in parameters
 		 *
@@ -4,6 +4,7 @@ import gameboj.Preconditions;
 import gameboj.bits.BitVector;
 import gameboj.bits.Bits;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public final class LcdImageLine {
@@ -31,6 +32,32 @@ public final class LcdImageLine {
 		this.size = msb.size();
 	}
 
+	/**
+	 * Writes the line in the buffer
+	 * 
+	 * @param buffer : the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		msb.writeTo(buffer);
+		lsb.writeTo(buffer);
+		opa.writeTo(buffer);
+	}
+
+	/**
+	 * Reads a line written by <code>writeTo</code>
+	 * 
+	 * @param buffer : the buffer to read from
+	 * @param size : size of the line
+	 * @return the line read
+	 * @throws java.nio.BufferUnderflowException if the buffer is too small
+	 */
+	public static LcdImageLine readFrom(ByteBuffer buffer, int size) {
+		BitVector msb = BitVector.readFrom(buffer, size);
+		BitVector lsb = BitVector.readFrom(buffer, size);
+		return new LcdImageLine(msb, lsb, BitVector.readFrom(buffer, size));
+	}
+
 	/**
 	 * Returns the size of the line
 	 * 
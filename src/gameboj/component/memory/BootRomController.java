@@ -1,16 +1,20 @@
 package gameboj.component.memory;
 
 import gameboj.AddressMap;
+import gameboj.Bus;
 import gameboj.component.Component;
+import gameboj.component.Stateful;
 import gameboj.component.cartridge.Cartridge;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents a boot rom controller
  * 
  * @author Francois BURGUET 288683
  * @author Gaietan Renault 283350
  */
-public final class BootRomController implements Component {
+public final class BootRomController implements Component, Stateful {
 
 	private final Cartridge cartridge;
 	private boolean activated;
@@ -29,6 +33,18 @@ public final class BootRomController implements Component {
 		activated = true;
 	}
 
+	/**
+	 * Attaches the controller to the bus, and as the handler of the register
+	 * disabling the boot ROM
+	 * 
+	 * @param bus : the bus to attach the controller to
+	 */
+	@Override
+	public void attachTo(Bus bus) {
+		bus.attach(this);
+		bus.attachRegister(this, AddressMap.REG_BOOT_ROM_DISABLE, 0xFF);
+	}
+
 	/**
 	 * Reads a 16 bits address; intercepts if it's a 8 bits address and boot memory
 	 * isn't activated
@@ -46,6 +62,15 @@ public final class BootRomController implements Component {
 		}
 	}
 
+	@Override
+	public int readUnchecked(int address) {
+		if (address <= 0xFF && activated) {
+			return Byte.toUnsignedInt(BootRom.DATA[address]);
+		} else {
+			return cartridge.readUnchecked(address);
+		}
+	}
+
 	/**
 	 * Writes data at 16 bits address, disables the boot memory depending if address
 	 * equals FF50
@@ -64,4 +89,25 @@ public final class BootRomController implements Component {
 		}
 	}
 
+	@Override
+	public void writeUnchecked(int address, int data) {
+		if (address == AddressMap.REG_BOOT_ROM_DISABLE) {
+			activated = false;
+		} else {
+			cartridge.writeUnchecked(address, data);
+		}
+	}
+
+	/**
+	 * Saves whether the boot ROM is mapped, the cartridge is saved separately
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put((byte) (activated ? 1 : 0));
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		activated = buffer.get() != 0;
+	}
 }
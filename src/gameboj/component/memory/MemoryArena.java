@@ -0,0 +1,120 @@
+package gameboj.component.memory;
+
+import gameboj.Preconditions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates the RAMs and register files holding the state of a GameBoy. The
+ * heap arena simply creates a new RAM for each allocation. An off-heap arena
+ * hands out consecutive ranges of a single native memory block, at offsets
+ * only depending on the order of the allocations: the memories and register
+ * files are then contiguous, outside of the heap, and can be read in one
+ * view. The program counter, the counters of the timer, the mode of the LCD
+ * controller, the banks of the cartridge or the state of the sound channels
+ * are kept in the components themselves, so the block is not a snapshot of
+ * the machine: <code>GameBoy.saveState</code> saves the whole state.
+ *
+ * @author Francois BURGUET
+ */
+public final class MemoryArena {
+
+	private static final int ALIGNMENT = Long.BYTES;
+	private static final MemoryArena HEAP = new MemoryArena(null);
+
+	private final Ram block;
+	private int size;
+
+	private MemoryArena(Ram block) {
+		this.block = block;
+	}
+
+	/**
+	 * Returns the arena allocating each RAM on the heap
+	 *
+	 * @return the heap arena
+	 */
+	public static MemoryArena heap() {
+		return HEAP;
+	}
+
+	/**
+	 * Creates an arena allocating RAMs in a single block of native memory
+	 *
+	 * @param capacity : size of the block
+	 * @return an off-heap arena
+	 * @throws IllegalArgumentException if the capacity is negative
+	 */
+	public static MemoryArena offHeap(int capacity) {
+		return new MemoryArena(Ram.offHeap(capacity));
+	}
+
+	/**
+	 * Allocates a RAM full of 0
+	 *
+	 * @param size : size of the RAM
+	 * @return the RAM, a view of the block of an off-heap arena
+	 * @throws IllegalArgumentException if the size is negative
+	 * @throws IllegalStateException if an off-heap arena has no room left
+	 */
+	public Ram allocate(int size) {
+		Preconditions.checkArgument(size >= 0);
+		if (block == null)
+			return new Ram(size);
+
+		int offset = (this.size + ALIGNMENT - 1) & -ALIGNMENT;
+		if (offset + size > block.size())
+			throw new IllegalStateException();
+		this.size = offset + size;
+		return block.slice(offset, size);
+	}
+
+	/**
+	 * Allocates a range of the block as an arena of its own, so that several
+	 * machines are laid out one after the other in the same block
+	 *
+	 * @param capacity : size of the range
+	 * @return an off-heap arena in the block, or the heap arena if this arena
+	 *         is the heap arena
+	 * @throws IllegalArgumentException if the capacity is negative
+	 * @throws IllegalStateException if an off-heap arena has no room left
+	 */
+	public MemoryArena subArena(int capacity) {
+		return block == null ? HEAP : new MemoryArena(allocate(capacity));
+	}
+
+	/**
+	 * Returns true if the arena allocates in native memory
+	 *
+	 * @return true if the arena is off-heap
+	 */
+	public boolean isOffHeap() {
+		return block != null;
+	}
+
+	/**
+	 * Returns the number of bytes allocated in the block, 0 for the heap arena
+	 *
+	 * @return the size of the allocated memories
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a read-only view of the memories and register files allocated in
+	 * an off-heap arena, whose content follows the machines
+	 *
+	 * @return the view of the allocated memories
+	 * @throws IllegalStateException if the arena is the heap arena
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		checkOffHeap();
+		return block.asReadOnlyBuffer().limit(size);
+	}
+
+	private void checkOffHeap() {
+		if (block == null)
+			throw new IllegalStateException();
+	}
+}
@@ -0,0 +1,165 @@
+package gameboj.component.memory;
+
+import gameboj.Preconditions;
+import gameboj.component.Component;
+import gameboj.component.Stateful;
+
+import java.nio.ByteBuffer;
+
+import static gameboj.AddressMap.ECHO_RAM_END;
+import static gameboj.AddressMap.ECHO_RAM_START;
+import static gameboj.AddressMap.HIGH_RAM_END;
+import static gameboj.AddressMap.HIGH_RAM_SIZE;
+import static gameboj.AddressMap.HIGH_RAM_START;
+import static gameboj.AddressMap.OAM_END;
+import static gameboj.AddressMap.OAM_RAM_SIZE;
+import static gameboj.AddressMap.OAM_START;
+import static gameboj.AddressMap.VIDEO_RAM_END;
+import static gameboj.AddressMap.VIDEO_RAM_SIZE;
+import static gameboj.AddressMap.VIDEO_RAM_START;
+import static gameboj.AddressMap.WORK_RAM_END;
+import static gameboj.AddressMap.WORK_RAM_SIZE;
+import static gameboj.AddressMap.WORK_RAM_START;
+
+/**
+ * Represents the internal memories of the GameBoy: video RAM, work RAM and its
+ * echo, OAM and high RAM. They are stored one after the other in a single RAM,
+ * and an address is decoded in one step with a table giving, for each 256
+ * bytes page of the address space, the offset of the page in the RAM and the
+ * range of mapped addresses in the page. Components owning a region, like the
+ * LCD controller, access it through a view of the RAM.
+ *
+ * @author Francois BURGUET
+ */
+public final class MemoryMap implements Component, Stateful {
+
+	private static final int WORK_RAM_OFFSET = 0;
+	private static final int VIDEO_RAM_OFFSET = WORK_RAM_OFFSET + WORK_RAM_SIZE;
+	private static final int OAM_OFFSET = VIDEO_RAM_OFFSET + VIDEO_RAM_SIZE;
+	private static final int HIGH_RAM_OFFSET = OAM_OFFSET + OAM_RAM_SIZE;
+	private static final int SIZE = HIGH_RAM_OFFSET + HIGH_RAM_SIZE;
+
+	private static final int PAGE_SIZE = 0x100;
+	private static final int[] PAGE_OFFSET = new int[PAGE_SIZE];
+	private static final int[] PAGE_START = new int[PAGE_SIZE];
+	private static final int[] PAGE_END = new int[PAGE_SIZE];
+
+	static {
+		map(WORK_RAM_START, WORK_RAM_END, WORK_RAM_OFFSET);
+		map(ECHO_RAM_START, ECHO_RAM_END, WORK_RAM_OFFSET);
+		map(VIDEO_RAM_START, VIDEO_RAM_END, VIDEO_RAM_OFFSET);
+		map(OAM_START, OAM_END, OAM_OFFSET);
+		map(HIGH_RAM_START, HIGH_RAM_END, HIGH_RAM_OFFSET);
+	}
+
+	private final Ram memory;
+
+	/**
+	 * Creates the memories, on the heap
+	 */
+	public MemoryMap() {
+		this(MemoryArena.heap());
+	}
+
+	/**
+	 * Creates the memories, allocated in the arena
+	 *
+	 * @param arena : the arena holding the memories
+	 */
+	public MemoryMap(MemoryArena arena) {
+		this.memory = arena.allocate(SIZE);
+	}
+
+	private static void map(int start, int end, int offset) {
+		for (int page = start / PAGE_SIZE; page <= (end - 1) / PAGE_SIZE; ++page) {
+			int pageAddress = page * PAGE_SIZE;
+			PAGE_OFFSET[page] = offset + pageAddress - start;
+			PAGE_START[page] = Math.max(start - pageAddress, 0);
+			PAGE_END[page] = Math.min(end - pageAddress, PAGE_SIZE);
+		}
+	}
+
+	@Override
+	public int read(int address) {
+		return readUnchecked(Preconditions.checkBits16(address));
+	}
+
+	@Override
+	public void write(int address, int data) {
+		writeUnchecked(Preconditions.checkBits16(address), Preconditions.checkBits8(data));
+	}
+
+	@Override
+	public int readUnchecked(int address) {
+		int page = address / PAGE_SIZE;
+		int index = address % PAGE_SIZE;
+		if (index < PAGE_START[page] || index >= PAGE_END[page])
+			return NO_DATA;
+		return memory.read(PAGE_OFFSET[page] + index);
+	}
+
+	@Override
+	public void writeUnchecked(int address, int data) {
+		int page = address / PAGE_SIZE;
+		int index = address % PAGE_SIZE;
+		if (index >= PAGE_START[page] && index < PAGE_END[page])
+			memory.writeUnchecked(PAGE_OFFSET[page] + index, data);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		memory.saveState(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		memory.loadState(buffer);
+	}
+
+	/**
+	 * Makes the memories of the target hold the content of these ones, sharing
+	 * their pages on the heap until either map writes them
+	 *
+	 * @param target : the memories of another GameBoy
+	 */
+	public void shareWith(MemoryMap target) {
+		memory.shareWith(target.memory);
+	}
+
+	/**
+	 * Returns a view of the video RAM, between 0x8000 and 0x9FFF
+	 *
+	 * @return the video RAM
+	 */
+	public Ram videoRam() {
+		return memory.slice(VIDEO_RAM_OFFSET, VIDEO_RAM_SIZE);
+	}
+
+	/**
+	 * Returns a view of the object attribute memory, between 0xFE00 and 0xFE9F
+	 *
+	 * @return the OAM
+	 */
+	public Ram oam() {
+		return memory.slice(OAM_OFFSET, OAM_RAM_SIZE);
+	}
+
+	/**
+	 * Returns a view of the work RAM, between 0xC000 and 0xDFFF, and echoed
+	 * between 0xE000 and 0xFDFF
+	 *
+	 * @return the work RAM
+	 */
+	public Ram workRam() {
+		return memory.slice(WORK_RAM_OFFSET, WORK_RAM_SIZE);
+	}
+
+	/**
+	 * Returns a view of the high RAM, between 0xFF80 and 0xFFFE
+	 *
+	 * @return the high RAM
+	 */
+	public Ram highRam() {
+		return memory.slice(HIGH_RAM_OFFSET, HIGH_RAM_SIZE);
+	}
+}
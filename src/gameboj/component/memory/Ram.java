@@ -1,20 +1,69 @@
 package gameboj.component.memory;
 
 import gameboj.Preconditions;
+import gameboj.component.Stateful;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
- * Represents a physical RAM
+ * Represents a physical RAM, backed either by pages on the heap, by native
+ * memory outside of the heap or by a memory mapping of a file. The pages of a
+ * heap RAM can be shared with a copy of the RAM: a shared page is copied by
+ * the first write to it, in either RAM.
  * 
  * @author Francois BURGUET 288683
  * @author Gaietan Renault 283350
  */
-public final class Ram {
+public final class Ram implements Stateful {
 
-	private byte[] data;
+	private static final int PAGE_BITS = 8;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	/**
+	 * Pages of a heap RAM, shared by the RAM and its slices. A page marked as
+	 * shared may be referenced by other RAMs, and is never written.
+	 */
+	private static final class Pages {
+		private final byte[][] data;
+		private final long[] shared;
+
+		private Pages(int size) {
+			int count = (size + PAGE_SIZE - 1) >>> PAGE_BITS;
+			data = new byte[count][];
+			shared = new long[(count + Long.SIZE - 1) / Long.SIZE];
+			for (int page = 0; page < count; ++page)
+				data[page] = new byte[Math.min(PAGE_SIZE, size - (page << PAGE_BITS))];
+		}
+
+		private Pages(Pages source) {
+			Arrays.fill(source.shared, -1L);
+			data = source.data.clone();
+			shared = source.shared.clone();
+		}
+
+		private byte[] writable(int page) {
+			if ((shared[page >>> 6] & 1L << page) != 0) {
+				data[page] = data[page].clone();
+				shared[page >>> 6] &= ~(1L << page);
+			}
+			return data[page];
+		}
+	}
+
+	private final ByteBuffer data;
+	private final Pages pages;
+	private final int offset;
+	private final int size;
+	private final boolean mapped;
 
 	/**
 	 * Constructor of Ram, creates a data array full of 0
@@ -23,7 +72,126 @@ public final class Ram {
 	 */
 	public Ram(int size) {
 		Preconditions.checkArgument(size >= 0);
-		this.data = new byte[size];
+		this.data = null;
+		this.pages = new Pages(size);
+		this.offset = 0;
+		this.size = size;
+		this.mapped = false;
+	}
+
+	private Ram(ByteBuffer data, boolean mapped) {
+		this.data = data;
+		this.pages = null;
+		this.offset = 0;
+		this.size = data.capacity();
+		this.mapped = mapped;
+	}
+
+	private Ram(Pages pages, int offset, int size) {
+		this.data = null;
+		this.pages = pages;
+		this.offset = offset;
+		this.size = size;
+		this.mapped = false;
+	}
+
+	/**
+	 * Creates a RAM full of 0 in native memory, outside of the heap
+	 * 
+	 * @param size : size of the RAM
+	 * @return a RAM allocated off-heap
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	public static Ram offHeap(int size) {
+		Preconditions.checkArgument(size >= 0);
+		return new Ram(ByteBuffer.allocateDirect(size), false);
+	}
+
+	/**
+	 * Creates a RAM backed by a read-write memory mapping of the file. Writes
+	 * land in the page cache and reach the file without any explicit save,
+	 * <code>force</code> makes them durable.
+	 * 
+	 * @param file : the file to map, created or extended with 0s to the size of
+	 *            the RAM if needed
+	 * @param size : size of the RAM
+	 * @return a RAM mapping the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the size is negative or the file is larger
+	 */
+	public static Ram ofFile(File file, int size) throws IOException {
+		Preconditions.checkArgument(size >= 0);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			Preconditions.checkArgument(channel.size() <= size);
+			return new Ram(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), true);
+		}
+	}
+
+	/**
+	 * Returns a RAM sharing the specified range of this RAM: writes in one are
+	 * visible in the other
+	 * 
+	 * @param index : index of the first byte of the range
+	 * @param size : size of the range
+	 * @return a view of the range
+	 * @throws IndexOutOfBoundsException if the range is invalid
+	 */
+	public Ram slice(int index, int size) {
+		if (pages == null)
+			return new Ram(data.slice(index, size), mapped);
+		Objects.checkFromIndexSize(index, size, this.size);
+		return new Ram(pages, offset + index, size);
+	}
+
+	/**
+	 * Returns a copy of this RAM, on the heap. A whole heap RAM shares all its
+	 * pages with the copy, which costs no copy until one of them writes a
+	 * page; other RAMs are copied.
+	 *
+	 * @return a RAM of the same size and content
+	 */
+	public Ram copy() {
+		if (pages != null && offset == 0 && size == pages.data.length << PAGE_BITS)
+			return new Ram(new Pages(pages), 0, size);
+		Ram copy = new Ram(size);
+		shareWith(copy);
+		return copy;
+	}
+
+	/**
+	 * Makes the specified RAM hold the content of this one. If both RAMs are
+	 * whole heap RAMs, they share all their pages, which costs no copy until
+	 * one of them writes a page; otherwise the content is copied.
+	 *
+	 * @param target : a RAM of the same size
+	 * @throws IllegalArgumentException if the sizes differ
+	 */
+	public void shareWith(Ram target) {
+		Preconditions.checkArgument(target.size == size);
+		if (pages == null || target.pages == null || offset != 0 || target.offset != 0
+				|| pages.data.length != target.pages.data.length) {
+			byte[] content = new byte[size];
+			read(0, content, 0, size);
+			target.write(0, content, 0, size);
+			return;
+		}
+		Arrays.fill(pages.shared, -1L);
+		System.arraycopy(pages.data, 0, target.pages.data, 0, pages.data.length);
+		Arrays.fill(target.pages.shared, -1L);
+	}
+
+	/**
+	 * Returns a read-only view of the whole RAM, whose content follows the
+	 * writes in the RAM
+	 *
+	 * @return the view of the RAM
+	 * @throws UnsupportedOperationException if the RAM is on the heap
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		if (pages != null)
+			throw new UnsupportedOperationException();
+		return data.asReadOnlyBuffer().clear();
 	}
 
 	/**
@@ -32,7 +200,7 @@ public final class Ram {
 	 * @return size of data
 	 */
 	public int size() {
-		return data.length;
+		return size;
 	}
 
 	/**
@@ -42,10 +210,10 @@ public final class Ram {
 	 * @return the byte at index in the data array
 	 */
 	public int read(int index) {
-		if (index < 0 || index >= size()) {
-			throw new IndexOutOfBoundsException();
-		}
-		return Byte.toUnsignedInt(data[index]);
+		if (pages == null)
+			return Byte.toUnsignedInt(data.get(index));
+		int i = offset + Objects.checkIndex(index, size);
+		return Byte.toUnsignedInt(pages.data[i >>> PAGE_BITS][i & (PAGE_SIZE - 1)]);
 	}
 
 	/**
@@ -55,28 +223,125 @@ public final class Ram {
 	 * @param value : 8 bits value to write at the index
 	 */
 	public void write(int index, int value) {
-		if (index < 0 || index >= size()) {
-			throw new IndexOutOfBoundsException();
-		} else {
-			data[index] = (byte) Preconditions.checkBits8(value);
+		writeUnchecked(index, Preconditions.checkBits8(value));
+	}
+
+	/**
+	 * Writes the value to the given index in the data array, without
+	 * validating the value
+	 * 
+	 * @param index : index where the value must be written
+	 * @param value : value to write at the index, assumed to be 8 bits
+	 * @throws IndexOutOfBoundsException if the index is invalid
+	 */
+	public void writeUnchecked(int index, int value) {
+		if (pages == null) {
+			data.put(index, (byte) value);
+			return;
 		}
+		int i = offset + Objects.checkIndex(index, size);
+		pages.writable(i >>> PAGE_BITS)[i & (PAGE_SIZE - 1)] = (byte) value;
 	}
 
-	public void saveRam(File file) {
-		OutputStream out;
-		try {
-			if (file.getParentFile().mkdirs() && file.createNewFile()){
-				out = new FileOutputStream(file);
-				out.write(data);
-				out.close();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * Copies a range of the data array in the given array
+	 * 
+	 * @param index : index of the first byte to copy
+	 * @param dest : the array to copy to
+	 * @param destIndex : index of the first byte in <code>dest</code>
+	 * @param length : number of bytes to copy
+	 * @throws IndexOutOfBoundsException if one of the ranges is invalid
+	 */
+	public void read(int index, byte[] dest, int destIndex, int length) {
+		if (pages == null) {
+			data.get(index, dest, destIndex, length);
+			return;
+		}
+		Objects.checkFromIndexSize(index, length, size);
+		Objects.checkFromIndexSize(destIndex, length, dest.length);
+		for (int i = offset + index, end = i + length; i < end;) {
+			int chunk = Math.min(end - i, PAGE_SIZE - (i & (PAGE_SIZE - 1)));
+			System.arraycopy(pages.data[i >>> PAGE_BITS], i & (PAGE_SIZE - 1), dest, destIndex, chunk);
+			i += chunk;
+			destIndex += chunk;
+		}
+	}
+
+	/**
+	 * Copies the given array in a range of the data array
+	 * 
+	 * @param index : index of the first byte to overwrite
+	 * @param src : the array to copy from
+	 * @param srcIndex : index of the first byte in <code>src</code>
+	 * @param length : number of bytes to copy
+	 * @throws IndexOutOfBoundsException if one of the ranges is invalid
+	 */
+	public void write(int index, byte[] src, int srcIndex, int length) {
+		if (pages == null) {
+			data.put(index, src, srcIndex, length);
+			return;
+		}
+		Objects.checkFromIndexSize(index, length, size);
+		Objects.checkFromIndexSize(srcIndex, length, src.length);
+		for (int i = offset + index, end = i + length; i < end;) {
+			int chunk = Math.min(end - i, PAGE_SIZE - (i & (PAGE_SIZE - 1)));
+			System.arraycopy(src, srcIndex, pages.writable(i >>> PAGE_BITS), i & (PAGE_SIZE - 1), chunk);
+			i += chunk;
+			srcIndex += chunk;
+		}
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		if (pages == null) {
+			buffer.put(data.duplicate().clear());
+			return;
+		}
+		if (buffer.remaining() < size)
+			throw new BufferOverflowException();
+		for (int i = offset, end = offset + size; i < end;) {
+			int chunk = Math.min(end - i, PAGE_SIZE - (i & (PAGE_SIZE - 1)));
+			buffer.put(pages.data[i >>> PAGE_BITS], i & (PAGE_SIZE - 1), chunk);
+			i += chunk;
+		}
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		if (buffer.remaining() < size())
+			throw new BufferUnderflowException();
+		if (pages == null) {
+			data.put(0, buffer, buffer.position(), size());
+			buffer.position(buffer.position() + size());
+			return;
+		}
+		for (int i = offset, end = offset + size; i < end;) {
+			int chunk = Math.min(end - i, PAGE_SIZE - (i & (PAGE_SIZE - 1)));
+			buffer.get(pages.writable(i >>> PAGE_BITS), i & (PAGE_SIZE - 1), chunk);
+			i += chunk;
 		}
 	}
 
 	public void loadRam(byte[] data) {
-		Preconditions.checkArgument(data.length == this.data.length);
-		this.data = data;
+		Preconditions.checkArgument(data.length == size());
+		write(0, data, 0, data.length);
+	}
+
+	/**
+	 * Returns true if the RAM is backed by a memory mapped file
+	 * 
+	 * @return true if the RAM is mapped
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Writes the content of a mapped RAM to the storage device. Does nothing if
+	 * the RAM is on the heap.
+	 */
+	public void force() {
+		if (mapped)
+			((MappedByteBuffer) data).force();
 	}
 }
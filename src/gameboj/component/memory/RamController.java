@@ -40,7 +40,16 @@ public final class RamController implements Component {
 
 	@Override
 	public int read(int address) {
-		Preconditions.checkArgument(0 <= address && address <= 0xFFFF);
+		return readUnchecked(Preconditions.checkBits16(address));
+	}
+
+	@Override
+	public void write(int address, int data) {
+		writeUnchecked(Preconditions.checkBits16(address), Preconditions.checkBits8(data));
+	}
+
+	@Override
+	public int readUnchecked(int address) {
 		if (address < startAddress || address > endAddress) {
 			return NO_DATA;
 		}
@@ -48,9 +57,9 @@ public final class RamController implements Component {
 	}
 
 	@Override
-	public void write(int address, int data) {
+	public void writeUnchecked(int address, int data) {
 		if (startAddress <= address && address <= endAddress) {
-			ram.write(Preconditions.checkBits16(address) - startAddress, Preconditions.checkBits8(data));
+			ram.writeUnchecked(address - startAddress, data);
 		}
 	}
 
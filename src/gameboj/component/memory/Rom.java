@@ -2,6 +2,11 @@ package gameboj.component.memory;
 
 import gameboj.Preconditions;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 /**
@@ -12,7 +17,7 @@ import java.util.Arrays;
  */
 public final class Rom {
 
-	private final byte[] data;
+	private final ByteBuffer data;
 
 	/**
 	 * Constructor of Rom, copies the ArrayList "data"
@@ -21,7 +26,28 @@ public final class Rom {
 	 */
 	public Rom(byte[] data) {
 		Preconditions.checkArgument(data.length > 0);
-		this.data = Arrays.copyOf(data, data.length);
+		this.data = ByteBuffer.wrap(Arrays.copyOf(data, data.length));
+	}
+
+	private Rom(ByteBuffer data) {
+		this.data = data;
+	}
+
+	/**
+	 * Creates a rom backed by a read-only memory mapping of the file. Nothing
+	 * is copied: the pages of each bank are loaded from the page cache the
+	 * first time they are read, and shared by every rom mapping the same file.
+	 * 
+	 * @param file : the file containing the rom
+	 * @return a rom reading the file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the file is empty
+	 */
+	public static Rom ofFile(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Preconditions.checkArgument(channel.size() > 0);
+			return new Rom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
 	}
 
 	/**
@@ -30,7 +56,16 @@ public final class Rom {
 	 * @return size of data
 	 */
 	public int size() {
-		return data.length;
+		return data.capacity();
+	}
+
+	/**
+	 * Returns a read-only view of the whole rom
+	 * 
+	 * @return the content of the rom
+	 */
+	ByteBuffer contents() {
+		return data.asReadOnlyBuffer();
 	}
 
 	/**
@@ -40,10 +75,7 @@ public final class Rom {
 	 * @return data written at index
 	 */
 	public int read(int index) {
-		if (index < 0 || index >= size()) {
-			throw new IndexOutOfBoundsException();
-		}
-		return Byte.toUnsignedInt(data[index]);
+		return Byte.toUnsignedInt(data.get(index));
 	}
 
 }
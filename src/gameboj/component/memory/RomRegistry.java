@@ -0,0 +1,131 @@
+package gameboj.component.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the roms in use, keyed by the SHA-256 hash of their content,
+ * so that every cartridge running the same game shares a single immutable
+ * rom. A rom is dropped from the registry once no cartridge uses it anymore,
+ * along with the hashes of the files it was read from: the registry only
+ * holds entries for the roms in use.
+ *
+ * @author Francois BURGUET
+ */
+public final class RomRegistry {
+
+	private static final Map<String, RomReference> ROMS = new ConcurrentHashMap<>();
+	private static final Map<String, FileDigest> FILE_DIGESTS = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<Rom> COLLECTED = new ReferenceQueue<>();
+
+	/**
+	 * Weak reference to a registered rom, remembering its hash so that its
+	 * entries can be removed once the rom is collected
+	 */
+	private static final class RomReference extends WeakReference<Rom> {
+		private final String digest;
+
+		RomReference(Rom rom, String digest) {
+			super(rom, COLLECTED);
+			this.digest = digest;
+		}
+	}
+
+	/**
+	 * Hash of the content of a file, valid while its size and modification
+	 * time do not change
+	 */
+	private record FileDigest(long length, long lastModified, String digest) {
+	}
+
+	private RomRegistry() {
+	}
+
+	/**
+	 * Returns the rom with the content of the specified file, mapping the file
+	 * only if no rom with the same content is registered. The hash of a file
+	 * is remembered as long as its size and modification time do not change.
+	 *
+	 * @param file : the file containing the rom
+	 * @return the shared rom with the content of <code>file</code>
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is empty
+	 */
+	public static Rom ofFile(File file) throws IOException {
+		removeCollected();
+		String path = file.getCanonicalPath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		FileDigest known = FILE_DIGESTS.get(path);
+		if (known != null && known.length() == length && known.lastModified() == lastModified) {
+			Rom rom = lookup(known.digest());
+			if (rom != null)
+				return rom;
+		}
+
+		Rom rom = Rom.ofFile(file);
+		String digest = digest(rom);
+		Rom shared = intern(digest, rom);
+		FILE_DIGESTS.put(path, new FileDigest(length, lastModified, digest));
+		return shared;
+	}
+
+	/**
+	 * Returns the registered rom with the same content as the given one,
+	 * registering the given rom if there is none
+	 *
+	 * @param rom : a rom, non-null
+	 * @return the shared rom with the content of <code>rom</code>
+	 */
+	public static Rom intern(Rom rom) {
+		removeCollected();
+		return intern(digest(rom), rom);
+	}
+
+	private static Rom lookup(String digest) {
+		RomReference ref = ROMS.get(digest);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * Removes the entries of the roms collected since the last call
+	 */
+	private static void removeCollected() {
+		RomReference ref;
+		while ((ref = (RomReference) COLLECTED.poll()) != null) {
+			ROMS.remove(ref.digest, ref);
+			String digest = ref.digest;
+			if (!ROMS.containsKey(digest))
+				FILE_DIGESTS.values().removeIf(known -> known.digest().equals(digest));
+		}
+	}
+
+	private static Rom intern(String digest, Rom rom) {
+		Rom[] shared = new Rom[1];
+		ROMS.compute(digest, (k, ref) -> {
+			shared[0] = ref == null ? null : ref.get();
+			if (shared[0] != null)
+				return ref;
+			shared[0] = rom;
+			return new RomReference(rom, digest);
+		});
+		return shared[0];
+	}
+
+	private static String digest(Rom rom) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(rom.contents());
+			return HexFormat.of().formatHex(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import static gameboj.GameBoy.CLOCK_FREQ;
 public final class AudioConverter implements SoundOutput {
     private static final int SAMPLE_RATE = 44100;
     private static final int BUFFER_SIZE = 4096;
+    private static final int CHUNK_SIZE = BUFFER_SIZE / 4;
     private static final AudioFormat FORMAT = new AudioFormat(
             AudioFormat.Encoding.PCM_UNSIGNED,
             SAMPLE_RATE,
@@ -21,7 +22,7 @@ public final class AudioConverter implements SoundOutput {
             SAMPLE_RATE,
             false
     );
-    private final static byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] buffer = new byte[CHUNK_SIZE];
     private static final int DIVIDER = (int) (CLOCK_FREQ / FORMAT.getSampleRate());
 
     private SourceDataLine line;
@@ -64,9 +65,24 @@ public final class AudioConverter implements SoundOutput {
         buffer[i++] = (byte) (left);
         buffer[i++] = (byte) (right);
 
-        if (i == BUFFER_SIZE) {
-            line.write(buffer, 0, BUFFER_SIZE);
+        if (i == CHUNK_SIZE) {
+            line.write(buffer, 0, CHUNK_SIZE);
             i = 0;
         }
     }
+
+    /**
+     * Returns the number of clock ticks to emulate to fill the audio line,
+     * used to pace the emulation on the audio clock
+     *
+     * @return the number of ticks, or -1 if no line is open
+     */
+    public long ticksUntilFull() {
+        SourceDataLine l = line;
+        if (l == null) {
+            return -1;
+        }
+        int freeSamples = (l.available() - i) / FORMAT.getFrameSize();
+        return Math.max(0, freeSamples) * (long) DIVIDER;
+    }
 }
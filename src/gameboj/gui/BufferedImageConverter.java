@@ -0,0 +1,36 @@
+package gameboj.gui;
+
+import gameboj.component.lcd.LcdImage;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Converts the images of the LCD to AWT images, usable without JavaFX
+ *
+ * @author Francois BURGUET
+ */
+public final class BufferedImageConverter {
+	private static final int[] COLOR_MAP = new int[] {
+			0xFF_FF_FF, 0xD3_D3_D3, 0xA9_A9_A9, 0x00_00_00
+	};
+
+	private BufferedImageConverter() {
+	}
+
+	/**
+	 * Converts the image, mapping its four shades of gray to RGB colors
+	 *
+	 * @param lcdImage : the image to convert
+	 * @return the RGB image
+	 */
+	public static BufferedImage convert(LcdImage lcdImage) {
+		BufferedImage image = new BufferedImage(lcdImage.width(), lcdImage.height(),
+				BufferedImage.TYPE_INT_RGB);
+
+		for (int y = 0; y < lcdImage.height(); ++y)
+			for (int x = 0; x < lcdImage.width(); ++x)
+				image.setRGB(x, y, COLOR_MAP[lcdImage.get(x, y)]);
+
+		return image;
+	}
+}
@@ -1,9 +1,14 @@
 package gameboj.gui;
 
+import gameboj.EmulationLoop;
 import gameboj.GameBoy;
+import gameboj.RewindBuffer;
 import gameboj.component.Joypad.Key;
 import gameboj.component.cartridge.Cartridge;
+import gameboj.component.cartridge.SaveManager;
 import gameboj.component.lcd.LcdController;
+import gameboj.component.lcd.LcdImage;
+import gameboj.movie.MovieRecorder;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.Scene;
@@ -14,10 +19,21 @@ import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 
 public class Main extends Application {
 
+	/**
+	 * What drives the emulation speed: the wall clock, or the fill level of
+	 * the audio line (falling back to the wall clock while sound is off)
+	 */
+	private enum Pacing {
+		VIDEO, AUDIO
+	}
+
 	private final static HashMap<KeyCode, Key> buttonMap;
 	static {
 		buttonMap = new HashMap<>();
@@ -31,18 +47,35 @@ public class Main extends Application {
 		buttonMap.put(KeyCode.RIGHT, Key.RIGHT);
 	}
 
+	private final static long REWIND_BUDGET = 64 << 20;
+
+	private Cartridge cartridge;
+	private MovieRecorder recorder;
+	private EmulationLoop loop;
+	private Thread emulation;
+	private volatile boolean rewinding;
+	private volatile boolean saveRequested;
+
 	public static void main(String[] args) {
 		Application.launch(args);
 	}
 
 	@Override
 	public void start(Stage stage) throws Exception {
-		if (getParameters().getRaw().size() > 1)
+		if (getParameters().getUnnamed().size() != 1)
 			System.exit(1);
 
-		File romFile = new File(getParameters().getRaw().get(0));
-		Cartridge rom = Cartridge.ofFile(romFile);
-		GameBoy gb = new GameBoy(rom);
+		Pacing pacing = Pacing.valueOf(getParameters().getNamed()
+				.getOrDefault("pacing", Pacing.VIDEO.name()).toUpperCase());
+
+		File romFile = new File(getParameters().getUnnamed().get(0));
+		cartridge = Cartridge.ofFile(romFile);
+		AudioConverter audio = new AudioConverter();
+		GameBoy gb = new GameBoy(cartridge, audio);
+		RewindBuffer rewind = new RewindBuffer(gb, REWIND_BUDGET);
+		String movie = getParameters().getNamed().get("record");
+		if (movie != null)
+			recorder = new MovieRecorder(gb, Path.of(movie));
 
 		ImageView imageView = new ImageView();
 		imageView.setFitWidth(LcdController.LCD_WIDTH * 2);
@@ -58,27 +91,82 @@ public class Main extends Application {
 		scene.setOnKeyPressed(event -> keyPressedHandler(gb, event, scene));
 		scene.setOnKeyReleased(event -> keyReleasedHandler(gb, event, scene));
 
-		long start = System.nanoTime();
+		EmulationLoop.FrameHook hook = g -> frameDone(g, rewind);
+		loop = pacing == Pacing.AUDIO
+				? new EmulationLoop(gb, audio::ticksUntilFull, hook)
+				: new EmulationLoop(gb, true, hook);
+		emulation = new Thread(loop, "emulation");
+		emulation.setDaemon(true);
+		emulation.start();
+
 		new AnimationTimer() {
 			@Override
 			public void handle(long now) {
-				gb.runUntil((long) ((now - start) * GameBoy.CLOCK_NANO_FREQ));
-				imageView.setImage(ImageConverter.convert(gb.lcdController().currentImage()));
+				LcdImage image = loop.takeFrame();
+				if (image != null)
+					imageView.setImage(ImageConverter.convert(image));
+				if (loop.failure() != null) {
+					stage.setTitle("GameBoj - emulation stopped: " + loop.failure());
+					stop();
+				}
 			}
 		}.start();
 	}
 
+	@Override
+	public void stop() throws IOException, InterruptedException {
+		if (loop != null) {
+			loop.stop();
+			emulation.join();
+		}
+		if (recorder != null)
+			recorder.close();
+		if (cartridge != null)
+			cartridge.saveGame();
+		SaveManager.defaultManager().close();
+	}
+
+	/**
+	 * Work done on the emulation thread after each frame: rewinding or
+	 * capturing the state, recording the movie and saving the game
+	 */
+	private void frameDone(GameBoy gb, RewindBuffer rewind) {
+		if (rewinding) {
+			if (rewind.size() > 1)
+				rewind.restore(1);
+		} else {
+			rewind.capture();
+		}
+		if (recorder != null) {
+			try {
+				recorder.frame();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (saveRequested) {
+			saveRequested = false;
+			gb.getRom().saveGame();
+		}
+	}
+
 	private void keyPressedHandler(GameBoy gb, KeyEvent event, Scene scene) {
 		if (event.getCode() == KeyCode.S) {
 			if (event.isControlDown())
-				gb.getRom().saveGame();
-		} else {
-			gb.joypad().keyPressed(buttonMap.getOrDefault(event.getCode(), null));
+				saveRequested = true;
+		} else if (event.getCode() == KeyCode.BACK_SPACE) {
+			rewinding = recorder == null;
+		} else if (buttonMap.containsKey(event.getCode())) {
+			gb.inputs().keyPressed(buttonMap.get(event.getCode()));
 		}
 	}
 
 	private void keyReleasedHandler(GameBoy gb, KeyEvent event, Scene scene) {
-		gb.joypad().keyReleased(buttonMap.getOrDefault(event.getCode(), null));
+		if (event.getCode() == KeyCode.BACK_SPACE) {
+			rewinding = false;
+		} else if (buttonMap.containsKey(event.getCode())) {
+			gb.inputs().keyReleased(buttonMap.get(event.getCode()));
+		}
 	}
 
 }
@@ -0,0 +1,221 @@
+package gameboj.gym;
+
+import gameboj.EmulationLoop;
+import gameboj.GameBoy;
+import gameboj.Preconditions;
+import gameboj.component.apu.SoundOutput;
+import gameboj.component.cartridge.Cartridge;
+import gameboj.component.lcd.LcdController;
+import gameboj.component.memory.MemoryMap;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Reinforcement learning environment running one copy of a game. A step holds
+ * the keys of an action for a number of frames, then computes the reward and
+ * writes the observation: the last screens, downscaled in grayscale, oldest
+ * first. Only the last frames of a step are drawn, the others are emulated
+ * with the drawing of the LCD controller disabled.
+ * <p>
+ * The actions are bitmasks of the keys held, bit <code>i</code> standing for
+ * the key of ordinal <code>i</code>. The reward function reads the memory of
+ * the game through <code>read</code>, without going through the bus.
+ *
+ * @author Francois BURGUET
+ */
+public final class Environment {
+
+	/**
+	 * Number of frames drawn at the end of a step: the frame ending in the
+	 * last step may have started in the previous one
+	 */
+	private static final int DRAWN_FRAMES = 2;
+
+	/**
+	 * Reward and end of the episodes of an environment
+	 */
+	@FunctionalInterface
+	public interface RewardFunction {
+
+		/**
+		 * Called after each step, to compute its reward
+		 *
+		 * @param environment : the environment
+		 * @return the reward of the step
+		 */
+		double reward(Environment environment);
+
+		/**
+		 * Called after each step, after the reward
+		 *
+		 * @param environment : the environment
+		 * @return true if the episode is over
+		 */
+		default boolean done(Environment environment) {
+			return false;
+		}
+
+		/**
+		 * Called at the start of each episode, after the game was reset
+		 *
+		 * @param environment : the environment
+		 */
+		default void reset(Environment environment) {
+		}
+	}
+
+	private final GameBoy gameBoy;
+	private final MemoryMap memory;
+	private final LcdController lcd;
+	private final RewardFunction rewardFunction;
+	private final int scale;
+
+	private final byte[] start;
+	private final ByteBuffer[] screens;
+	private int latest;
+	private boolean done;
+
+	/**
+	 * Creates the environment, with a fresh cartridge RAM that is never saved.
+	 * Its episodes start in the current state of the game, at its start until
+	 * <code>markStart</code> is called.
+	 *
+	 * @param cartridge : the cartridge of the game, whose ROM is shared
+	 * @param scale : the side of the blocks of pixels averaged in one byte of
+	 *            the observation, dividing the dimensions of the screen
+	 * @param stack : number of screens in the observation
+	 * @param rewardFunction : the reward function, non-null
+	 * @throws IllegalArgumentException if the scale does not divide the
+	 *             dimensions of the screen, or if the stack is not positive
+	 * @throws NullPointerException if the reward function is null
+	 */
+	public Environment(Cartridge cartridge, int scale, int stack, RewardFunction rewardFunction) {
+		Preconditions.checkArgument(scale > 0 && LcdController.LCD_WIDTH % scale == 0
+				&& LcdController.LCD_HEIGHT % scale == 0 && stack > 0);
+		this.rewardFunction = Objects.requireNonNull(rewardFunction);
+		this.scale = scale;
+		gameBoy = new GameBoy(cartridge.fork(), SoundOutput.NULL_OUTPUT);
+		memory = gameBoy.memoryMap();
+		lcd = gameBoy.lcdController();
+
+		start = new byte[gameBoy.stateSize()];
+		gameBoy.saveState(ByteBuffer.wrap(start));
+		int screenSize = LcdController.LCD_WIDTH / scale * (LcdController.LCD_HEIGHT / scale);
+		screens = new ByteBuffer[stack];
+		for (int i = 0; i < stack; ++i)
+			screens[i] = ByteBuffer.allocate(screenSize);
+	}
+
+	/**
+	 * Uses the current state of the game as the start of the next episodes,
+	 * for instance after its title screen
+	 */
+	public void markStart() {
+		gameBoy.saveState(ByteBuffer.wrap(start));
+	}
+
+	/**
+	 * Starts a new episode, and writes its first observation, every screen of
+	 * the stack being the current one
+	 *
+	 * @param observation : the buffer receiving the observation at its
+	 *            position, typically a direct buffer shared with the agent
+	 * @throws java.nio.BufferOverflowException if the buffer has less than
+	 *             <code>observationSize()</code> bytes remaining
+	 */
+	public void reset(ByteBuffer observation) {
+		gameBoy.loadState(ByteBuffer.wrap(start));
+		lcd.setRendering(true);
+		done = false;
+		rewardFunction.reset(this);
+
+		for (ByteBuffer screen : screens)
+			lcd.currentImage().writeGrayscale(screen.clear(), scale);
+		writeObservation(observation);
+	}
+
+	/**
+	 * Holds the keys of the action during the specified number of frames,
+	 * then writes the observation
+	 *
+	 * @param action : the keys held during the step
+	 * @param frames : number of frames to run
+	 * @param observation : the buffer receiving the observation at its
+	 *            position, typically a direct buffer shared with the agent
+	 * @return the reward of the step
+	 * @throws IllegalArgumentException if the number of frames is not
+	 *             positive
+	 * @throws java.nio.BufferOverflowException if the buffer has less than
+	 *             <code>observationSize()</code> bytes remaining
+	 */
+	public double step(int action, int frames, ByteBuffer observation) {
+		Preconditions.checkArgument(frames > 0);
+		gameBoy.joypad().setKeys(action);
+
+		long end = gameBoy.ticks() + frames * EmulationLoop.FRAME_TICKS;
+		if (frames > DRAWN_FRAMES) {
+			lcd.setRendering(false);
+			gameBoy.runUntil(end - DRAWN_FRAMES * EmulationLoop.FRAME_TICKS);
+			lcd.setRendering(true);
+		}
+		gameBoy.runUntil(end);
+
+		latest = (latest + 1) % screens.length;
+		lcd.currentImage().writeGrayscale(screens[latest].clear(), scale);
+		writeObservation(observation);
+
+		double reward = rewardFunction.reward(this);
+		done = rewardFunction.done(this);
+		return reward;
+	}
+
+	/**
+	 * Writes the screens of the stack, oldest first
+	 */
+	private void writeObservation(ByteBuffer observation) {
+		for (int i = 1; i <= screens.length; ++i)
+			observation.put(screens[(latest + i) % screens.length].rewind());
+	}
+
+	/**
+	 * Reads a byte of the internal memories of the game: work RAM, video RAM,
+	 * OAM or high RAM
+	 *
+	 * @param address : the address to read
+	 * @return the byte at the address, or <code>Component.NO_DATA</code> if it
+	 *         is not in an internal memory
+	 * @throws IllegalArgumentException if the address is not a 16 bits value
+	 */
+	public int read(int address) {
+		return memory.read(address);
+	}
+
+	/**
+	 * Returns true if the reward function ended the episode at the last step
+	 *
+	 * @return true if the episode is over
+	 */
+	public boolean done() {
+		return done;
+	}
+
+	/**
+	 * Returns the number of bytes of an observation
+	 *
+	 * @return the size of an observation
+	 */
+	public int observationSize() {
+		return screens.length * screens[0].capacity();
+	}
+
+	/**
+	 * Returns the GameBoy of the environment, which must not be run outside
+	 * of the environment
+	 *
+	 * @return the GameBoy
+	 */
+	public GameBoy gameBoy() {
+		return gameBoy;
+	}
+}
@@ -0,0 +1,161 @@
+package gameboj.headless;
+
+import gameboj.EmulationLoop;
+import gameboj.GameBoy;
+import gameboj.component.Joypad.Key;
+import gameboj.component.apu.SoundOutput;
+import gameboj.component.cartridge.Cartridge;
+import gameboj.component.cartridge.SaveManager;
+import gameboj.component.lcd.LcdImage;
+import gameboj.gui.BufferedImageConverter;
+import gameboj.movie.MoviePlayer;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Runs a GameBoy without display nor audio device, as fast as possible, and
+ * reports the hash of the final frame and the emulation speed.
+ * <p>
+ * Usage: <code>HeadlessMain rom [options]</code>, with the options
+ * <ul>
+ * <li><code>--frames=N</code>: number of frames to run, 600 by default</li>
+ * <li><code>--cycles=N</code>: number of cycles to run, instead of frames</li>
+ * <li><code>--script=file</code>: input script, made of lines
+ * <code>frame press|release key</code>, blank lines and lines starting with
+ * <code>#</code> being ignored</li>
+ * <li><code>--movie=file</code>: movie replayed before running, checking its
+ * frame hashes</li>
+ * <li><code>--png=file</code>: file receiving the final frame</li>
+ * <li><code>--saves=dir</code>: directory of the battery saves, which are
+ * loaded but never written; without it, the cartridge RAM starts blank, so
+ * that the run does not depend on local saves</li>
+ * <li><code>--runs=N</code>: number of runs, each on a fresh GameBoy, the
+ * reported speed being the one of the fastest, 1 by default</li>
+ * </ul>
+ * The exit status is 1 for invalid arguments, 2 if the movie desynchronised.
+ *
+ * @author Francois BURGUET
+ */
+public final class HeadlessMain {
+
+	private static final long DEFAULT_FRAMES = 600;
+
+	private HeadlessMain() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		String rom = null;
+		for (String arg : args) {
+			if (arg.startsWith("--") && arg.indexOf('=') > 2)
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			else if (rom == null)
+				rom = arg;
+			else
+				usage();
+		}
+		if (rom == null)
+			usage();
+
+		long ticks;
+		int runs;
+		try {
+			ticks = options.containsKey("cycles")
+					? 4 * Long.parseLong(options.get("cycles"))
+					: EmulationLoop.FRAME_TICKS * Long.parseLong(options.getOrDefault("frames", "" + DEFAULT_FRAMES));
+			runs = Integer.parseInt(options.getOrDefault("runs", "1"));
+		} catch (NumberFormatException e) {
+			usage();
+			return;
+		}
+		if (runs <= 0)
+			usage();
+
+		SaveManager saves = options.containsKey("saves") ? new SaveManager(Path.of(options.get("saves")), 0) : null;
+		GameBoy gb = null;
+		long nanos = Long.MAX_VALUE;
+		boolean synced = true;
+		for (int run = 0; run < runs; ++run) {
+			gb = new GameBoy(Cartridge.ofFile(new File(rom), saves), SoundOutput.NULL_OUTPUT);
+			long start = System.nanoTime();
+			if (options.containsKey("movie")) {
+				try (MoviePlayer player = new MoviePlayer(gb, Path.of(options.get("movie")))) {
+					synced &= player.play();
+					System.out.println("movie.frames=" + player.frames());
+					System.out.println("movie.desync=" + player.firstDesync());
+				}
+			}
+			if (options.containsKey("script"))
+				queueScript(gb, Path.of(options.get("script")));
+			gb.runUntil(Math.max(gb.ticks(), ticks));
+			nanos = Math.min(nanos, System.nanoTime() - start);
+		}
+
+		LcdImage image = gb.lcdController().currentImage();
+		if (options.containsKey("png"))
+			ImageIO.write(BufferedImageConverter.convert(image), "png", new File(options.get("png")));
+
+		long cycles = gb.ticks() / 4;
+		System.out.println("cycles=" + cycles);
+		System.out.println("frames=" + gb.ticks() / EmulationLoop.FRAME_TICKS);
+		System.out.printf("seconds=%.3f%n", nanos / 1e9);
+		System.out.printf("cycles.per.second=%.0f%n", cycles / (nanos / 1e9));
+		System.out.printf("frame.hash=%08x%n", frameHash(image));
+		System.exit(synced ? 0 : 2);
+	}
+
+	/**
+	 * Sends the events of the script to the input queue of the GameBoy,
+	 * timestamped with the tick at which their frame starts
+	 */
+	private static void queueScript(GameBoy gb, Path script) throws IOException {
+		List<String> lines = Files.readAllLines(script);
+		for (String line : lines) {
+			line = line.strip();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] fields = line.split("\\s+");
+			try {
+				if (fields.length != 3)
+					throw new IllegalArgumentException();
+				long tick = Long.parseLong(fields[0]) * EmulationLoop.FRAME_TICKS;
+				Key key = Key.valueOf(fields[2].toUpperCase());
+				switch (fields[1]) {
+					case "press" -> gb.inputs().keyPressed(key, tick);
+					case "release" -> gb.inputs().keyReleased(key, tick);
+					default -> throw new IllegalArgumentException();
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println("invalid script line: " + line);
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the CRC-32 of the shades of the pixels of the image
+	 */
+	private static int frameHash(LcdImage image) {
+		byte[] shades = new byte[image.width() * image.height()];
+		for (int y = 0; y < image.height(); ++y)
+			for (int x = 0; x < image.width(); ++x)
+				shades[y * image.width() + x] = (byte) image.get(x, y);
+		CRC32 crc = new CRC32();
+		crc.update(shades);
+		return (int) crc.getValue();
+	}
+
+	private static void usage() {
+		System.err.println("usage: HeadlessMain rom [--frames=N | --cycles=N] [--script=file]"
+				+ " [--movie=file] [--png=file] [--saves=dir] [--runs=N]");
+		System.exit(1);
+	}
+}
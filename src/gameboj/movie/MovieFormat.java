@@ -0,0 +1,46 @@
+package gameboj.movie;
+
+import gameboj.GameBoy;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Layout of the movie files. A movie starts with a header: the magic number,
+ * the version of the format, the size and global checksum of the ROM, and
+ * the length and content of the save state the movie starts from. It is
+ * followed by a stream of records, each made of a tag, the clock tick at
+ * which the record applies, and its content: the ordinal of the key for the
+ * key records, the hash of the whole machine state for the frame records. A
+ * truncated movie can be replayed up to its last complete record.
+ *
+ * @author Francois BURGUET
+ */
+final class MovieFormat {
+
+	static final int MAGIC = 0x47424A4D; // "GBJM"
+	static final int VERSION = 1;
+
+	static final byte KEY_PRESSED = 'P';
+	static final byte KEY_RELEASED = 'R';
+	static final byte FRAME = 'F';
+
+	private MovieFormat() {
+	}
+
+	/**
+	 * Returns the hash of the state of the GameBoy, used to detect the
+	 * desynchronisation of a replay
+	 *
+	 * @param gameBoy : the GameBoy
+	 * @param scratch : a buffer of at least <code>stateSize()</code> bytes
+	 * @return the CRC-32C of the save state of the GameBoy
+	 */
+	static int stateHash(GameBoy gameBoy, ByteBuffer scratch) {
+		scratch.clear();
+		gameBoy.saveState(scratch);
+		CRC32C crc = new CRC32C();
+		crc.update(scratch.flip());
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,145 @@
+package gameboj.movie;
+
+import gameboj.GameBoy;
+import gameboj.Preconditions;
+import gameboj.component.Joypad.Key;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Replays a movie recorded by a <code>MovieRecorder</code> on a GameBoy
+ * running the same cartridge, as fast as possible. The GameBoy is first put
+ * in the state the movie starts from, then run from record to record. The
+ * hash of its state is compared with the recorded one at every frame record,
+ * the first mismatch giving the tick at which the replay desynchronised.
+ *
+ * @author Francois BURGUET
+ */
+public final class MoviePlayer implements Closeable {
+
+	private static final Key[] KEYS = Key.values();
+
+	private final GameBoy gameBoy;
+	private final DataInputStream in;
+	private final ByteBuffer state;
+	private long frames;
+	private long firstDesync = -1;
+
+	/**
+	 * Opens the movie and loads its initial state in the GameBoy
+	 *
+	 * @param gameBoy : the GameBoy to replay the movie on, non-null
+	 * @param file : the movie file
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a movie of this
+	 *             version, recorded with the cartridge of the GameBoy
+	 */
+	public MoviePlayer(GameBoy gameBoy, Path file) throws IOException {
+		this.gameBoy = gameBoy;
+		this.state = ByteBuffer.allocate(gameBoy.stateSize());
+		this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+		try {
+			Preconditions.checkArgument(in.readInt() == MovieFormat.MAGIC
+					&& in.readInt() == MovieFormat.VERSION
+					&& in.readInt() == gameBoy.getRom().romSize()
+					&& in.readInt() == gameBoy.getRom().globalChecksum()
+					&& in.readInt() == state.capacity());
+			in.readFully(state.array());
+			gameBoy.loadState(state);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Replays the movie up to its end, or up to its last complete record if
+	 * it is truncated
+	 *
+	 * @return true if the state of the GameBoy matched the recorded hash at
+	 *         every frame
+	 * @throws IOException if the movie cannot be read, or holds an unknown
+	 *             record, an unknown key or a record older than the previous
+	 *             one
+	 */
+	public boolean play() throws IOException {
+		try {
+			while (true) {
+				byte tag = in.readByte();
+				long tick = in.readLong();
+				switch (tag) {
+					case MovieFormat.KEY_PRESSED -> {
+						Key key = readKey();
+						runUntil(tick);
+						gameBoy.joypad().keyPressed(key);
+					}
+					case MovieFormat.KEY_RELEASED -> {
+						Key key = readKey();
+						runUntil(tick);
+						gameBoy.joypad().keyReleased(key);
+					}
+					case MovieFormat.FRAME -> {
+						int hash = in.readInt();
+						runUntil(tick);
+						++frames;
+						if (firstDesync < 0 && hash != MovieFormat.stateHash(gameBoy, state))
+							firstDesync = tick;
+					}
+					default -> throw new StreamCorruptedException();
+				}
+			}
+		} catch (EOFException e) {
+			return firstDesync < 0;
+		}
+	}
+
+	private Key readKey() throws IOException {
+		int ordinal = in.readUnsignedByte();
+		if (ordinal >= KEYS.length)
+			throw new StreamCorruptedException();
+		return KEYS[ordinal];
+	}
+
+	/**
+	 * Runs the GameBoy until the tick of a record, which cannot be before
+	 * the tick of the previous one
+	 */
+	private void runUntil(long tick) throws IOException {
+		if (tick < gameBoy.ticks())
+			throw new StreamCorruptedException();
+		gameBoy.runUntil(tick);
+	}
+
+	/**
+	 * Returns the number of frame hashes checked so far
+	 *
+	 * @return the number of frames
+	 */
+	public long frames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the tick of the first frame whose state did not match the
+	 * recorded hash
+	 *
+	 * @return the tick of the desynchronisation, or -1 if there was none
+	 */
+	public long firstDesync() {
+		return firstDesync;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
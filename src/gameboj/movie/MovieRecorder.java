@@ -0,0 +1,88 @@
+package gameboj.movie;
+
+import gameboj.GameBoy;
+import gameboj.component.Joypad.Key;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the inputs of a GameBoy in a movie file, keyed by the clock tick at
+ * which they were applied, so that the session can be replayed exactly by a
+ * <code>MoviePlayer</code>. The movie starts with the state of the GameBoy
+ * when the recording starts, including its cartridge RAM.
+ * <p>
+ * The recorder listens to the input queue of the GameBoy: the keys must be
+ * sent through that queue, and are recorded on the thread running the
+ * GameBoy when they are applied.
+ *
+ * @author Francois BURGUET
+ */
+public final class MovieRecorder implements Closeable {
+
+	private final GameBoy gameBoy;
+	private final DataOutputStream out;
+	private final ByteBuffer state;
+
+	/**
+	 * Starts recording the GameBoy in the specified file. Must be called
+	 * while the GameBoy is not running.
+	 *
+	 * @param gameBoy : the GameBoy to record, non-null
+	 * @param file : the movie file, overwritten if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public MovieRecorder(GameBoy gameBoy, Path file) throws IOException {
+		this.gameBoy = gameBoy;
+		this.state = ByteBuffer.allocate(gameBoy.stateSize());
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+
+		out.writeInt(MovieFormat.MAGIC);
+		out.writeInt(MovieFormat.VERSION);
+		out.writeInt(gameBoy.getRom().romSize());
+		out.writeInt(gameBoy.getRom().globalChecksum());
+		gameBoy.saveState(state);
+		out.writeInt(state.position());
+		out.write(state.array(), 0, state.position());
+		gameBoy.inputs().setListener(this::applied);
+	}
+
+	private void applied(Key key, boolean pressed, long tick) {
+		try {
+			out.writeByte(pressed ? MovieFormat.KEY_PRESSED : MovieFormat.KEY_RELEASED);
+			out.writeLong(tick);
+			out.writeByte(key.ordinal());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Records the hash of the current state of the GameBoy, which the replay
+	 * checks at the same tick. Usually called once per frame, on the thread
+	 * running the GameBoy, between two runs.
+	 *
+	 * @throws IOException if the movie cannot be written
+	 */
+	public void frame() throws IOException {
+		out.writeByte(MovieFormat.FRAME);
+		out.writeLong(gameBoy.ticks());
+		out.writeInt(MovieFormat.stateHash(gameBoy, state));
+	}
+
+	/**
+	 * Stops listening to the input queue, writes the pending records and
+	 * closes the movie file
+	 */
+	@Override
+	public void close() throws IOException {
+		gameBoy.inputs().setListener(null);
+		out.close();
+	}
+}